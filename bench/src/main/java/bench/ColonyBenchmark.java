@@ -0,0 +1,79 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Stepping and counting on random colonies, as made by the Colony constructor. A random colony dies down as it
+// runs, so advance () steps a fresh one for the same few generations each time, rather than stepping one for as
+// long as an iteration lasts (most of which would be spent on what was left of it)
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class ColonyBenchmark
+{
+	private static final int GENERATIONS = 16; // stepped by each call of advance ()
+
+	@Param ({"100", "1000", "4000"})
+	public int size; // colony is size * size
+
+	@Param ({"0.1", "0.3", "0.6"})
+	public double density;
+
+	private Object colony;
+	private int row, column; // cell looked at by live ()
+
+	// Make a new colony for every iteration, so each one starts from the same density (advance () runs once an
+	// iteration, so this is outside its timing)
+	@Setup (Level.Iteration)
+	public void setUp () throws Throwable
+	{
+		colony = (Object) Game.NEW_COLONY.invokeExact (size, size, density, 85.0);
+		row = size / 2;
+		column = size / 2;
+	}
+
+	@Benchmark
+	@BenchmarkMode (Mode.SingleShotTime)
+	@Warmup (iterations = 20)
+	@Measurement (iterations = 50)
+	@OperationsPerInvocation (GENERATIONS)
+	public void advance () throws Throwable
+	{
+		for (int i = 0; i < GENERATIONS; i++)
+			Game.ADVANCE.invokeExact (colony);
+	}
+
+	@Benchmark
+	public boolean live () throws Throwable
+	{
+		return (boolean) Game.LIVE.invokeExact (colony, row, column);
+	}
+
+	@Benchmark
+	public int getCellNum () throws Throwable
+	{
+		return (int) Game.GET_CELL_NUM.invokeExact (colony);
+	}
+
+	@Benchmark
+	public boolean anyCellsLeft () throws Throwable
+	{
+		return (boolean) Game.ANY_CELLS_LEFT.invokeExact (colony);
+	}
+}
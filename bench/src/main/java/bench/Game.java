@@ -0,0 +1,93 @@
+package bench;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+// The game's classes are in the default package, which code in a package can't name (and JMH benchmarks
+// must be in a package), so they are reached through method handles. Handles in static final fields are
+// inlined by the JIT, so calls through them cost the same as direct calls
+final class Game
+{
+	static final Class<?> COLONY = find ("Colony"), BOARD = find ("Board"), COLONY_FILE = find ("ColonyFile");
+
+	// new Colony (rows, columns, density, popEradRate)
+	static final MethodHandle NEW_COLONY = constructor (COLONY, int.class, int.class, double.class, double.class);
+
+	// colony.advance (), colony.live (row, column), colony.getCellNum (), colony.anyCellsLeft (), colony.toString ()
+	static final MethodHandle ADVANCE = method (COLONY, "advance", void.class);
+	static final MethodHandle LIVE = method (COLONY, "live", boolean.class, int.class, int.class);
+	static final MethodHandle GET_CELL_NUM = method (COLONY, "getCellNum", int.class);
+	static final MethodHandle ANY_CELLS_LEFT = method (COLONY, "anyCellsLeft", boolean.class);
+	static final MethodHandle TO_STRING = method (COLONY, "toString", String.class);
+
+	// ColonyFile.load (file, rows, columns, popEradRate), ColonyFile.save (colony, file)
+	static final MethodHandle LOAD = staticMethod (COLONY_FILE, "load", COLONY, File.class, int.class, int.class, double.class);
+	static final MethodHandle SAVE = staticMethod (COLONY_FILE, "save", void.class, BOARD, File.class);
+
+	private Game ()
+	{
+	}
+
+	// Find a class of the game
+	private static Class<?> find (String name)
+	{
+		try
+		{
+			return Class.forName (name);
+		}
+		catch (ClassNotFoundException e)
+		{
+			throw new IllegalStateException ("Game class " + name + " is missing", e);
+		}
+	}
+
+	// Handle for a constructor, returning Object
+	private static MethodHandle constructor (Class<?> type, Class<?>... parameters)
+	{
+		try
+		{
+			MethodHandle handle = MethodHandles.lookup ().findConstructor (type, MethodType.methodType (void.class, parameters));
+			return handle.asType (handle.type ().changeReturnType (Object.class));
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalStateException (e);
+		}
+	}
+
+	// Handle for an instance method, taking the instance as Object
+	private static MethodHandle method (Class<?> type, String name, Class<?> returnType, Class<?>... parameters)
+	{
+		try
+		{
+			MethodHandle handle = MethodHandles.lookup ().findVirtual (type, name, MethodType.methodType (returnType, parameters));
+			return handle.asType (handle.type ().changeParameterType (0, Object.class));
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalStateException (e);
+		}
+	}
+
+	// Handle for a static method, with game classes in its type changed to Object
+	private static MethodHandle staticMethod (Class<?> type, String name, Class<?> returnType, Class<?>... parameters)
+	{
+		try
+		{
+			MethodHandle handle = MethodHandles.lookup ().findStatic (type, name, MethodType.methodType (returnType, parameters));
+			MethodType erased = handle.type ();
+			for (int i = 0; i < parameters.length; i++)
+				if (!parameters [i].isPrimitive () && parameters [i].getName ().indexOf ('.') < 0) // game class
+					erased = erased.changeParameterType (i, Object.class);
+			if (!returnType.isPrimitive () && returnType.getName ().indexOf ('.') < 0)
+				erased = erased.changeReturnType (Object.class);
+			return handle.asType (erased);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalStateException (e);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Loading and stepping the stencils shipped with the game (run from the project folder, or set stencilDir). Like
+// ColonyBenchmark.advance (), advance () steps each stencil as loaded for the same few generations each time, so
+// it isn't timing whatever the stencil has turned into by the end of an iteration
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class StencilBenchmark
+{
+	private static final int GENERATIONS = 16; // stepped by each call of advance ()
+
+	@Param ({"0", "5", "6", "7", "8", "9"}) // credits, R-pentomino, glider gun, pulsar, die hard, puffers
+	public String stencil;
+
+	@Param ({"stencils"})
+	public String stencilDir;
+
+	private File file;
+	private Object colony;
+
+	@Setup (Level.Trial)
+	public void findFile ()
+	{
+		file = new File (stencilDir, stencil + ".txt");
+		if (!file.isFile ())
+			throw new IllegalStateException ("Can't find " + file.getAbsolutePath ());
+	}
+
+	// Start every iteration from the stencil as loaded (advance () runs once an iteration, so this is outside its
+	// timing)
+	@Setup (Level.Iteration)
+	public void setUp () throws Throwable
+	{
+		colony = (Object) Game.LOAD.invokeExact (file, 100, 100, 85.0);
+	}
+
+	@Benchmark
+	@BenchmarkMode (Mode.SingleShotTime)
+	@Warmup (iterations = 20)
+	@Measurement (iterations = 50)
+	@OperationsPerInvocation (GENERATIONS)
+	public void advance () throws Throwable
+	{
+		for (int i = 0; i < GENERATIONS; i++)
+			Game.ADVANCE.invokeExact (colony);
+	}
+
+	@Benchmark
+	public Object load () throws Throwable
+	{
+		return (Object) Game.LOAD.invokeExact (file, 100, 100, 85.0);
+	}
+}
@@ -0,0 +1,70 @@
+package bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Turning random colonies into text, and saving and loading them as files
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class TextBenchmark
+{
+	@Param ({"100", "300", "1000"})
+	public int size; // colony is size * size
+
+	@Param ({"0.1", "0.6"})
+	public double density;
+
+	private Object colony;
+	private File saved, scratch; // file loaded by load (), file written by save ()
+
+	@Setup
+	public void setUp () throws Throwable
+	{
+		colony = (Object) Game.NEW_COLONY.invokeExact (size, size, density, 85.0);
+		saved = File.createTempFile ("colony", ".txt");
+		scratch = File.createTempFile ("colony", ".txt");
+		Game.SAVE.invokeExact (colony, saved);
+	}
+
+	@TearDown
+	public void tearDown ()
+	{
+		saved.delete ();
+		scratch.delete ();
+	}
+
+	@Benchmark
+	public String toText () throws Throwable
+	{
+		return (String) Game.TO_STRING.invokeExact (colony);
+	}
+
+	@Benchmark
+	public void save () throws Throwable
+	{
+		Game.SAVE.invokeExact (colony, scratch);
+	}
+
+	@Benchmark
+	public Object load () throws Throwable
+	{
+		return (Object) Game.LOAD.invokeExact (saved, size, size, 85.0);
+	}
+}
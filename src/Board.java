@@ -0,0 +1,52 @@
+// Anything that holds a colony of cells the simulation can show, edit and advance.
+// Rows and columns are the part of the colony that is shown (for an unbounded colony, just a window onto it)
+public interface Board
+{
+	// Getter methods for the size of the board
+	public int getRows ();
+	public int getColumns ();
+
+	// Checks if there is a cell at a location
+	public boolean isAlive (int row, int column);
+
+	// Returns the column of the first cell in a row at or after a column, or -1 if there isn't one
+	public int nextAlive (int row, int column);
+
+	// Puts a cell into (or removes a cell from) a location
+	public void setCell (int row, int column, boolean alive);
+
+	// Returns number of cells in the colony, and the number born and died last generation
+	public int getCellNum ();
+	public int getBirths ();
+	public int getDeaths ();
+
+	// Returns a hash of the cells, kept up to date as they change (the same cells always give the same hash)
+	public long getHash ();
+
+	// Checks if there are any cells left in the colony
+	public boolean anyCellsLeft ();
+
+	// Produce next generation of cells in colony
+	public void advance ();
+
+	// Add cells to / delete cells in an area, at the population/eradication rate
+	public void populate (int x1, int x2, int y1, int y2);
+	public void eradicate (int x1, int x2, int y1, int y2);
+
+	// Populates one square (for freestyle population)
+	public void populateOne (int y, int x);
+
+	// Getter and setter methods for the rule the board follows (boards that can't follow a rule throw
+	// IllegalArgumentException)
+	public Rule getRule ();
+	public void setRule (Rule rule);
+
+	// Setter method for population/eradication rate
+	public void setPopEradRate (double popEradRate);
+
+	// Remove every cell
+	public void clear ();
+
+	// Copy another colony's cells into this one with its top left corner at (row, column), clipping at the edges
+	public void place (Colony pattern, int row, int column);
+}
@@ -0,0 +1,110 @@
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+// An image of a colony with one pixel per cell (or per block of cells, when zoomed out), for drawing scaled up in a
+// single drawImage call instead of one fillRect per cell. Only the cells inside the area being painted (the clip) are
+// put in the image, so the cost of drawing depends on how much is on screen rather than on the size of the colony.
+// The pixels are written straight into the image's buffer, and the image is reused (and isn't rewritten until the
+// snapshot or the area changes)
+class BoardImage
+{
+	static final int LIFE = 0x00FF00, SPACE = 0x000000; // life is green! Death. is black.
+
+	private BufferedImage image;
+	private int[] pixels; // the image's pixels, row by row
+	private Snapshot drawn; // snapshot the pixels were last written from
+	private int drawnLevel; // size of the blocks they were written from (0 for cells)
+	private int firstRow, firstColumn, lastRow, lastColumn; // area they hold, in blocks (last ones not included)
+
+	// Draw a snapshot of a colony with its top left corner at (x, y), each cell scale pixels wide
+	void draw (Graphics g, Snapshot colony, int x, int y, int scale)
+	{
+		draw (g, colony, null, 0, x, y, scale);
+	}
+
+	// Draw the blocks 2^level cells wide of a population pyramid with the top left corner at (x, y), each block
+	// scale pixels wide and brighter the more cells it has
+	void draw (Graphics g, DensityPyramid pyramid, int level, int x, int y, int scale)
+	{
+		draw (g, pyramid.getSnapshot (), level == 0 ? null : pyramid, level, x, y, scale);
+	}
+
+	// Draw cells (pyramid is null) or blocks
+	private void draw (Graphics g, Snapshot colony, DensityPyramid pyramid, int level, int x, int y, int scale)
+	{
+		// Work out which blocks are inside the clip
+		int top = 0, left = 0, bottom = ((colony.rows - 1) >> level) + 1, right = ((colony.columns - 1) >> level) + 1;
+		Rectangle clip = g.getClipBounds ();
+		if (clip != null)
+		{
+			top = Math.max (top, (clip.y - y) / scale);
+			left = Math.max (left, (clip.x - x) / scale);
+			bottom = Math.min (bottom, (clip.y + clip.height - y + scale - 1) / scale); // round up to whole blocks
+			right = Math.min (right, (clip.x + clip.width - x + scale - 1) / scale);
+		}
+		if (top >= bottom || left >= right) // nothing to draw
+			return;
+
+		if (colony != drawn || level != drawnLevel || top != firstRow || left != firstColumn || bottom != lastRow || right != lastColumn)
+		{
+			drawn = colony;
+			drawnLevel = level;
+			firstRow = top;
+			firstColumn = left;
+			lastRow = bottom;
+			lastColumn = right;
+
+			int width = right - left, height = bottom - top;
+			if (image == null || image.getWidth () < width || image.getHeight () < height) // too small; make a bigger one
+			{
+				image = new BufferedImage (width, height, BufferedImage.TYPE_INT_RGB);
+				pixels = ((DataBufferInt) image.getRaster ().getDataBuffer ()).getData ();
+			}
+			if (pyramid == null)
+				writeCells (colony);
+			else
+				writeBlocks (pyramid);
+		}
+		g.drawImage (image, x + left * scale, y + top * scale, x + right * scale, y + bottom * scale,
+				0, 0, right - left, bottom - top, null);
+	}
+
+	// Write the pixels of the cells in the area
+	private void writeCells (Snapshot colony)
+	{
+		int stride = image.getWidth ();
+		long[] cells = colony.cells;
+		for (int row = firstRow; row < lastRow; row++)
+		{
+			int start = (row - firstRow) * stride - firstColumn; // pixel of column 0 of this row (which may be outside the image)
+			Arrays.fill (pixels, start + firstColumn, start + lastColumn, SPACE);
+			for (int w = firstColumn >>> 6; w <= (lastColumn - 1) >>> 6; w++) // only the cells need writing
+			{
+				long word = cells [row * colony.words + w];
+				if (w == firstColumn >>> 6)
+					word &= -1L << firstColumn; // ignore cells before the area
+				if (w == (lastColumn - 1) >>> 6)
+					word &= -1L >>> (63 - ((lastColumn - 1) & 63)); // and after it
+				for (; word != 0; word &= word - 1) // each cell in the word
+					pixels [start + w * 64 + Long.numberOfTrailingZeros (word)] = LIFE;
+			}
+		}
+	}
+
+	// Write the pixels of the blocks in the area, shaded from dark green (one cell) to LIFE (full)
+	private void writeBlocks (DensityPyramid pyramid)
+	{
+		int stride = image.getWidth ();
+		int[] counts = pyramid.get (drawnLevel);
+		int blockColumns = pyramid.getColumns (drawnLevel);
+		for (int row = firstRow; row < lastRow; row++)
+			for (int col = firstColumn; col < lastColumn; col++)
+			{
+				long cells = counts [row * blockColumns + col];
+				pixels [(row - firstRow) * stride + col - firstColumn] = cells == 0 ? SPACE : (int) (64 + (191 * cells >> (2 * drawnLevel))) << 8;
+			}
+	}
+}
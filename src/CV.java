@@ -6,42 +6,45 @@ import javax.swing.JPanel;
 
 class CV extends JPanel
 {
-	boolean[][] currentGrid; // colony
+	Simulation simulation; // colony
+	DensityPyramid pyramid; // cells in blocks of the colony (shared with the colony panel)
+	private BoardImage image = new BoardImage (); // pixels of the colony, reused between repaints
 	
 	// Default constructor
-	public CV (boolean[][] currentGrid)
+	public CV (Simulation simulation, DensityPyramid pyramid)
 	{
-		this.currentGrid = currentGrid;
+		this.simulation = simulation;
+		this.pyramid = pyramid;
 		repaint();
 	}
-
-	// Setter method for grid (colony)
-	public void setGrid (boolean[][] currentGrid)
-	{
-		this.currentGrid = currentGrid;
-	}
 	
 	// Custom paint onto the JPanel
 	public void paintComponent (Graphics g)
 	{
 		super.paintComponent (g); // override default paintComponent
 		// Draws lifeforms/empty spaces
-		for (int row = 0; row < currentGrid.length; row++)
-			for (int col = 0; col < currentGrid[0].length; col++) {
-				if (currentGrid[row][col]) // life
-				g.setColor(Color.green); // life is green!
-				else
-					g.setColor(Color.black); // Death. is black.
-				g.fillRect(col * 2 + 7, row * 2 + 5, 2, 2); // draw appropriately coloured rectangle
-			}
+		Snapshot currentGrid = simulation.latest(); // newest generation the simulation thread has finished
+		if (currentGrid == null) // the simulation thread hasn't taken over the first colony yet
+			return;
+		pyramid.update (currentGrid);
 		
-		// Draw grid
-		g.setColor(Color.black);
-		for (int i = 0; i < currentGrid.length; i++)
+		// Colonies bigger than 100 * 100 are shown as blocks of cells (from the pyramid), small enough to fit in the same space
+		int level = 0;
+		while (level < DensityPyramid.MAX_LEVEL && (((currentGrid.rows - 1) >> level) >= 100 || ((currentGrid.columns - 1) >> level) >= 100))
+			level++;
+		if (level > 0)
 		{
-			g.drawLine (0 + 7, i * 2 + 5, currentGrid.length * 2 + 7, i * 2 + 5);
-			g.drawLine(i * 2 + 7, 0 + 5, i * 2 + 7, currentGrid.length * 2 + 5);
+			image.draw (g, pyramid, level, 7, 5, 2);
+			return;
 		}
+		image.draw (g, currentGrid, 7, 5, 2);
+		
+		// Draw grid
+		g.setColor(Color.black);
+		for (int i = 0; i < currentGrid.rows; i++)
+			g.drawLine (0 + 7, i * 2 + 5, currentGrid.columns * 2 + 7, i * 2 + 5);
+		for (int i = 0; i < currentGrid.columns; i++)
+			g.drawLine(i * 2 + 7, 0 + 5, i * 2 + 7, currentGrid.rows * 2 + 5);
 
 	}
 }
@@ -0,0 +1,540 @@
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Checks that colonies step the way they should: Colony against a reference that works out each cell on its own by
+// counting its neighbours one at a time, for every topology and several kinds of rule, Colony stepped on several
+// threads against one thread, and the table, unbounded, HashLife and sharded engines against Colony. Also checks that
+// files, the history and the cycle detector give back what went into them, and that the window's zoomed out counts keep
+// up with the cells. Run it from the project folder after changing any of them:
+//
+//   java -cp build Check [seed]
+//
+// It prints what it checked, and stops with an error at the first difference. Run from the jar built in the vector
+// folder (with --add-modules jdk.incubator.vector), it checks the Vector API stepping too
+public class Check
+{
+	private static final String[] RULES = {"B3/S23", "B36/S23", "B01/S2", "B2/S/C3", "B345/S2345/C7", "R2,C0,M1,S3..5,B4..5,NM", "R3,C4,M0,S8..14,B9..11,NM"};
+	private static final int[][] SIZES = {{37, 70}, {70, 130}, {100, 700}}; // (the last is wide enough for runs of tiles)
+
+	private static Random random;
+	private static int checks; // comparisons made
+
+	// Main method
+	public static void main (String[] args)
+	{
+		random = new Random (args.length > 0 ? Long.parseLong (args [0]) : 1);
+		try
+		{
+			checkColony ();
+			checkThreads ();
+			checkTable ();
+			checkUnbounded ();
+			checkHashLife ();
+			checkFiles ();
+			checkHistory ();
+			checkCycles ();
+			checkPyramid ();
+			checkShards ();
+		}
+		catch (Exception e)
+		{
+			System.out.println ("FAILED: " + e.getMessage ());
+			e.printStackTrace ();
+			System.exit (1);
+		}
+		System.out.println ("All " + checks + " checks passed");
+		System.exit (0); // (the shard workers' threads would keep it running)
+	}
+
+	// Count a check, stopping if it failed
+	private static void check (boolean passed, String what)
+	{
+		checks++;
+		if (!passed)
+			throw new IllegalStateException (what);
+	}
+
+	// Returns a colony with cells at random (and dying cells too, under Generations rules)
+	private static Colony soup (int rows, int columns, Rule rule, Topology topology, double density)
+	{
+		Colony colony = new Colony (rows, columns, 0, 0);
+		colony.setRule (rule);
+		colony.setTopology (topology);
+		for (int row = 0; row < rows; row++)
+			for (int column = 0; column < columns; column++)
+				if (random.nextDouble () < density)
+					colony.setState (row, column, 1 + random.nextInt (rule.getStates () - 1));
+		return colony;
+	}
+
+	// Returns the state of every cell of a colony
+	private static int[][] states (Colony colony)
+	{
+		int[][] states = new int [colony.getRows ()][colony.getColumns ()];
+		for (int row = 0; row < colony.getRows (); row++)
+			for (int column = 0; column < colony.getColumns (); column++)
+				states [row] [column] = colony.getState (row, column);
+		return states;
+	}
+
+	// Returns the next generation of a grid of states (see Colony.getState), working out each cell on its own: its
+	// neighbours are counted one at a time and the count handed to the rule for just that cell
+	private static int[][] reference (int[][] states, Rule rule, Topology topology)
+	{
+		int rows = states.length, columns = states [0].length, radius = rule.getRadius ();
+		int[][] next = new int [rows][columns];
+		long[] count = new long [rule.getCountBits ()];
+		for (int row = 0; row < rows; row++)
+			for (int column = 0; column < columns; column++)
+			{
+				int neighbours = 0;
+				for (int dy = -radius; dy <= radius; dy++)
+					for (int dx = -radius; dx <= radius; dx++)
+						if ((dy != 0 || dx != 0) && stateAt (states, row + dy, column + dx, topology) == 1)
+							neighbours++;
+				for (int bit = 0; bit < count.length; bit++)
+					count [bit] = (neighbours >>> bit) & 1;
+				int state = states [row] [column];
+				if ((rule.next (count, state == 1 ? 1 : 0, state >= 2 ? 1 : 0) & 1) != 0)
+					next [row] [column] = 1;
+				else if (state == 1 && rule.getStates () > 2) // starts dying
+					next [row] [column] = 2;
+				else if (state >= 2) // gets older, until it is past the last state
+					next [row] [column] = state + 1 == rule.getStates () ? 0 : state + 1;
+			}
+		return next;
+	}
+
+	// Returns the state of a cell, which may be past the edges of the grid
+	private static int stateAt (int[][] states, int row, int column, Topology topology)
+	{
+		int rows = states.length, columns = states [0].length;
+		if (column < 0 || column >= columns)
+		{
+			if (!topology.wrapsColumns ())
+				return 0;
+			column = (column % columns + columns) % columns;
+		}
+		if (row < 0 || row >= rows)
+		{
+			if (!topology.wrapsRows ())
+				return 0;
+			int wraps = row < 0 ? (row - rows + 1) / rows : row / rows; // times round (rounded down)
+			row -= wraps * rows;
+			if (topology.flipsRows () && wraps % 2 != 0)
+				column = columns - 1 - column;
+		}
+		return states [row] [column];
+	}
+
+	// Returns a new colony with the same states as a grid, so its hash and population are worked out from scratch
+	private static Colony fromStates (int[][] states, Rule rule)
+	{
+		Colony colony = new Colony (states.length, states [0].length, 0, 0);
+		colony.setRule (rule);
+		for (int row = 0; row < states.length; row++)
+			for (int column = 0; column < states [0].length; column++)
+				colony.setState (row, column, states [row] [column]);
+		return colony;
+	}
+
+	// Returns whether two boards have the same live cells
+	private static boolean sameCells (Board a, Board b)
+	{
+		for (int row = 0; row < a.getRows (); row++)
+			for (int column = 0; column < a.getColumns (); column++)
+				if (a.isAlive (row, column) != b.isAlive (row, column))
+					return false;
+		return true;
+	}
+
+	// Colony against the reference, with the births, deaths and hash it keeps up to date as it goes
+	private static void checkColony ()
+	{
+		int runs = 0;
+		for (String rulestring : RULES)
+			for (Topology topology : Topology.values ())
+				for (int[] size : SIZES)
+				{
+					Rule rule = Rule.parse (rulestring);
+					if (size [1] > 200 && !rule.isLife ()) // (the wide colony is for Conway's rule, which is stepped in runs)
+						continue;
+					String what = rule + ", " + topology + ", " + size [0] + " x " + size [1];
+					Colony colony = soup (size [0], size [1], rule, topology, 0.35);
+					int[][] expected = states (colony);
+					for (int generation = 1; generation <= 20; generation++)
+					{
+						int[][] before = expected;
+						colony.advance ();
+						expected = reference (expected, rule, topology);
+						int births = 0, deaths = 0;
+						for (int row = 0; row < expected.length; row++)
+							for (int column = 0; column < expected [0].length; column++)
+							{
+								boolean was = before [row] [column] == 1, is = expected [row] [column] == 1;
+								births += !was && is ? 1 : 0;
+								deaths += was && !is ? 1 : 0;
+								if (colony.getState (row, column) != expected [row] [column])
+									check (false, what + ": cell (" + row + ", " + column + ") is " + colony.getState (row, column) + " at generation " + generation + " instead of " + expected [row] [column]);
+							}
+						Colony fresh = fromStates (expected, rule);
+						check (colony.getCellNum () == fresh.getCellNum (), what + ": population at generation " + generation);
+						check (colony.getBirths () == births && colony.getDeaths () == deaths, what + ": births and deaths at generation " + generation);
+						check (colony.getHash () == fresh.getHash (), what + ": hash at generation " + generation);
+					}
+					runs++;
+				}
+		System.out.println ("Colony matches the reference: " + runs + " colonies, " + (Colony.getLanes () > 1 ? Colony.getLanes () + " words at once" : "one word at a time"));
+	}
+
+	// Colony stepped on several threads against one thread (the reference is too slow for colonies big enough to split)
+	private static void checkThreads ()
+	{
+		ForkJoinPool pool = new ForkJoinPool (4);
+		for (String rulestring : new String[] {"B3/S23", "B2/S/C3"})
+		{
+			Rule rule = Rule.parse (rulestring);
+			Colony one = soup (256, 4100, rule, Topology.TORUS, 0.3);
+			Colony many = fromStates (states (one), rule);
+			many.setTopology (Topology.TORUS);
+			many.setExecutor (pool, 16);
+			for (int generation = 1; generation <= 10; generation++)
+			{
+				one.advance ();
+				many.advance ();
+				check (one.getHash () == many.getHash () && one.getCellNum () == many.getCellNum () && sameCells (one, many), rule + ": threads differ at generation " + generation);
+			}
+		}
+		pool.shutdown ();
+		System.out.println ("Colony on 4 threads matches one thread");
+	}
+
+	// TableColony against Colony, for every two state rule with a radius of 1 (it has no other topologies)
+	private static void checkTable ()
+	{
+		for (String rulestring : RULES)
+		{
+			Rule rule = Rule.parse (rulestring);
+			if (rule.getRadius () != 1 || rule.getStates () != 2)
+				continue;
+			for (int[] size : SIZES)
+			{
+				Colony colony = soup (size [0], size [1], rule, Topology.DEAD, 0.35);
+				TableColony table = new TableColony (size [0], size [1], 0, 0);
+				table.place (colony, 0, 0);
+				table.setRule (rule);
+				for (int generation = 1; generation <= 30; generation++)
+				{
+					colony.advance ();
+					table.advance ();
+					check (sameCells (colony, table) && colony.getCellNum () == table.getCellNum () && colony.getBirths () == table.getBirths () && colony.getDeaths () == table.getDeaths (),
+							"TableColony, " + rule + ", " + size [0] + " x " + size [1] + ": differs at generation " + generation);
+				}
+			}
+		}
+		System.out.println ("TableColony matches Colony");
+	}
+
+	// SparseColony against Colony, with a soup in the middle of a colony big enough that it doesn't reach the edges
+	private static void checkUnbounded ()
+	{
+		for (String rulestring : new String[] {"B3/S23", "B36/S23"})
+		{
+			Rule rule = Rule.parse (rulestring);
+			Colony colony = new Colony (200, 200, 0, 0);
+			colony.setRule (rule);
+			colony.place (soup (30, 30, rule, Topology.DEAD, 0.4), 85, 85);
+			SparseColony sparse = new SparseColony (200, 200, 0, 0);
+			sparse.setRule (rule);
+			sparse.place (colony, 0, 0);
+			for (int generation = 1; generation <= 60; generation++) // (cells spread a column a generation at most)
+			{
+				colony.advance ();
+				sparse.advance ();
+				check (sameCells (colony, sparse) && colony.getCellNum () == sparse.getCellNum (), "SparseColony, " + rule + ": differs at generation " + generation);
+			}
+		}
+		System.out.println ("SparseColony matches Colony");
+	}
+
+	// HashLife against Colony, jumping ahead by numbers of generations that aren't powers of two, with a soup in the
+	// middle of a colony big enough that it doesn't reach the edges (which HashLife doesn't have)
+	private static void checkHashLife ()
+	{
+		for (int generations : new int[] {1, 37, 64, 100})
+		{
+			Colony colony = new Colony (300, 300, 0, 0);
+			colony.place (soup (30, 30, Rule.LIFE, Topology.DEAD, 0.4), 135, 135);
+			HashLife life = new HashLife (colony);
+			life.advance (generations);
+			for (int i = 0; i < generations; i++)
+				colony.advance ();
+			Colony copy = new Colony (300, 300, 0, 0);
+			life.writeTo (copy);
+			check (life.getPopulation () == colony.getCellNum () && sameCells (colony, copy), "HashLife differs after " + generations + " generations");
+		}
+		System.out.println ("HashLife matches Colony");
+	}
+
+	// Colonies saved and loaded again, in both formats and a row at a time
+	private static void checkFiles () throws IOException
+	{
+		for (String rulestring : new String[] {"B3/S23", "B2/S/C3", "B3/S23/C60", "R2,C5,M1,S3..5,B4..5,NM"})
+		{
+			Rule rule = Rule.parse (rulestring);
+			Colony colony = soup (50, 130, rule, Topology.DEAD, 0.4);
+			for (int generation = 0; generation < 30; generation++) // (so there are empty rows, runs of all lengths, and all the states of Generations rules)
+				colony.advance ();
+			StringWriter rle = new StringWriter ();
+			ColonyFile.write (colony, rle);
+			Colony loaded = ColonyFile.load (new ByteArrayInputStream (rle.toString ().getBytes ("US-ASCII")), 0, 0, 0);
+			check (loaded != null && loaded.getRule ().equals (rule) && loaded.getHash () == colony.getHash () && loaded.getCellNum () == colony.getCellNum (), rule + ": RLE file loads differently");
+
+			File file = File.createTempFile ("check", ".rle");
+			try
+			{
+				write (file, rle.toString ());
+				checkRows (file, 0, 0, colony);
+				StringBuilder text = new StringBuilder (); // the old format, which only holds live cells
+				for (int row = 0; row < colony.getRows (); row++, text.append ('\n'))
+					for (int column = 0; column < colony.getColumns (); column++)
+						text.append (colony.isAlive (row, column) ? "1 " : "0 ");
+				write (file, text.toString ());
+				loaded = ColonyFile.load (file, colony.getRows (), colony.getColumns (), 0);
+				check (loaded != null && sameCells (loaded, colony), rule + ": old format file loads differently");
+				checkRows (file, colony.getRows (), colony.getColumns (), colony);
+			}
+			finally
+			{
+				file.delete ();
+			}
+		}
+
+		// The old format, which only holds live cells, big enough to take more than one of the buffers it is read in
+		Colony colony = soup (300, 300, Rule.LIFE, Topology.DEAD, 0.3);
+		StringBuilder text = new StringBuilder ();
+		for (int row = 0; row < colony.getRows (); row++, text.append ('\n'))
+			for (int column = 0; column < colony.getColumns (); column++)
+				text.append (colony.isAlive (row, column) ? "1 " : "0 ");
+		Colony loaded = ColonyFile.load (new ByteArrayInputStream (text.toString ().getBytes ("US-ASCII")), 300, 300, 0);
+		check (loaded != null && loaded.getRows () == 300 && loaded.getColumns () == 300 && sameCells (loaded, colony), "Old format file loads differently");
+		System.out.println ("Files load what was saved");
+	}
+
+	// Write text to a file
+	private static void write (File file, String text) throws IOException
+	{
+		Writer out = new FileWriter (file);
+		try
+		{
+			out.write (text);
+		}
+		finally
+		{
+			out.close ();
+		}
+	}
+
+	// Check that reading a file a row at a time gives the live cells of a colony
+	private static void checkRows (File file, int rows, int columns, Colony colony) throws IOException
+	{
+		ColonyFile.RowReader reader = ColonyFile.openRows (file, rows, columns);
+		check (reader != null && reader.getRows () == colony.getRows () && reader.getColumns () == colony.getColumns (), "Row reader gets the size wrong");
+		long[] words = new long [colony.getWords ()];
+		for (int row = 0; row < colony.getRows (); row++)
+		{
+			reader.readRow (words);
+			for (int w = 0; w < words.length; w++)
+				check (words [w] == colony.getWord (row, w), "Row reader gets row " + row + " wrong");
+		}
+		reader.close ();
+	}
+
+	// The history taken back a generation at a time, then to generations picked at random
+	private static void checkHistory ()
+	{
+		Colony colony = soup (64, 200, Rule.LIFE, Topology.DEAD, 0.35);
+		History history = new History (1L << 30);
+		List<long[]> generations = new ArrayList<long[]> ();
+		for (int generation = 0; generation <= 600; generation++)
+		{
+			if (generation > 0)
+				colony.advance ();
+			history.record (colony, generation);
+			generations.add (colony.getCells ());
+		}
+		for (int generation = 599; generation >= 0; generation--)
+		{
+			check (history.back (colony), "History can't go back to generation " + generation);
+			check (Arrays.equals (colony.getCells (), generations.get (generation)) && history.getGeneration () == generation, "History goes back to generation " + generation + " wrong");
+		}
+		for (int i = 0; i < 50; i++)
+		{
+			int generation = random.nextInt (generations.size ());
+			check (history.scrub (generation, colony) && Arrays.equals (colony.getCells (), generations.get (generation)), "History jumps to generation " + generation + " wrong");
+		}
+		System.out.println ("History gives back every generation");
+	}
+
+	// The cycle detector on a blinker and a block
+	private static void checkCycles ()
+	{
+		Colony colony = new Colony (20, 20, 0, 0);
+		colony.setCell (5, 4, true);
+		colony.setCell (5, 5, true);
+		colony.setCell (5, 6, true);
+		colony.setCell (12, 12, true);
+		colony.setCell (12, 13, true);
+		colony.setCell (13, 12, true);
+		CycleDetector cycles = new CycleDetector ();
+		long generation = 0;
+		while (!cycles.add (colony, generation) && generation < 10)
+		{
+			colony.advance ();
+			generation++;
+		}
+		check (cycles.getPeriod () == 2 && cycles.getOnset () == 1, "Cycle detector finds period " + cycles.getPeriod () + " from generation " + cycles.getOnset ());
+		System.out.println ("Cycle detector finds a period 2 oscillator");
+	}
+
+	// A density pyramid kept up to date from snapshot to snapshot against one made from scratch, as the colony steps
+	// (with generations skipped, as the window does) and is edited, cleared and replaced
+	private static void checkPyramid ()
+	{
+		Colony colony = soup (300, 200, Rule.LIFE, Topology.TORUS, 0.3);
+		DensityPyramid pyramid = new DensityPyramid ();
+		for (int generation = 0; generation <= 80; generation++)
+		{
+			if (generation > 0)
+				colony.advance ();
+			if (generation % 7 == 0) // flip a cell
+			{
+				int row = random.nextInt (300), column = random.nextInt (200);
+				colony.setCell (row, column, !colony.isAlive (row, column));
+			}
+			if (generation == 40)
+				colony.clear ();
+			if (generation == 41)
+				colony.place (soup (100, 100, Rule.LIFE, Topology.DEAD, 0.5), 100, 50);
+			if (generation % 3 != 1) // (the window misses snapshots)
+				checkPyramid (pyramid, new Snapshot (colony, generation), "generation " + generation);
+		}
+		checkPyramid (pyramid, new Snapshot (soup (300, 200, Rule.LIFE, Topology.TORUS, 0.3), 0), "another colony");
+		SparseColony sparse = new SparseColony (300, 200, 0, 0);
+		sparse.place (colony, 0, 0);
+		checkPyramid (pyramid, new Snapshot (sparse, 0), "an unbounded colony");
+		sparse.advance ();
+		checkPyramid (pyramid, new Snapshot (sparse, 1), "an unbounded colony stepped");
+		System.out.println ("Density pyramid keeps up with the cells");
+	}
+
+	// Bring a pyramid up to date with a snapshot and check it against one made from scratch, at every level
+	private static void checkPyramid (DensityPyramid pyramid, Snapshot snapshot, String what)
+	{
+		pyramid.update (snapshot);
+		DensityPyramid fresh = new DensityPyramid ();
+		fresh.update (snapshot);
+		for (int level = 1; level <= 9; level++)
+			check (Arrays.equals (pyramid.get (level), fresh.get (level)), "Density pyramid at level " + level + " is wrong after " + what);
+	}
+
+	// ShardDriver against Colony, with workers on threads of this process, then once with workers it starts itself
+	private static void checkShards () throws IOException
+	{
+		List<InetSocketAddress> workers = new ArrayList<InetSocketAddress> ();
+		for (int i = 0; i < 3; i++)
+			workers.add (startWorker ());
+		int runs = 0;
+		for (String rulestring : new String[] {"B3/S23", "B36/S23", "R2,C0,M1,S3..5,B4..5,NM"})
+			for (Topology topology : Topology.values ())
+			{
+				Rule rule = Rule.parse (rulestring);
+				checkShards (soup (70, 130, rule, topology, 0.35), workers, 0);
+				runs++;
+			}
+		checkShards (soup (70, 130, Rule.LIFE, Topology.KLEIN_BOTTLE, 0.35), null, 2);
+		System.out.println ("ShardDriver matches Colony: " + runs + " colonies on 3 workers, and one on 2 workers it started");
+	}
+
+	// Step a colony and the same colony split into shards, comparing them (on workers, or on shards new processes)
+	private static void checkShards (Colony colony, List<InetSocketAddress> workers, int shards) throws IOException
+	{
+		String what = "ShardDriver, " + colony.getRule () + ", " + colony.getTopology ();
+		File file = File.createTempFile ("check", ".rle");
+		ShardDriver driver;
+		try
+		{
+			StringWriter rle = new StringWriter ();
+			ColonyFile.write (colony, rle);
+			write (file, rle.toString ());
+			ColonyFile.RowReader reader = ColonyFile.openRows (file, 0, 0);
+			driver = workers != null ? new ShardDriver (reader, colony.getRule (), colony.getTopology (), workers) : new ShardDriver (reader, colony.getRule (), colony.getTopology (), shards, 1);
+			reader.close ();
+		}
+		finally
+		{
+			file.delete ();
+		}
+		try
+		{
+			check (driver.getCellNum () == colony.getCellNum (), what + ": loads the wrong population");
+			for (int generation = 1; generation <= 20; generation++)
+			{
+				colony.advance ();
+				driver.advance ();
+				check (driver.getCellNum () == colony.getCellNum () && driver.getBirths () == colony.getBirths () && driver.getDeaths () == colony.getDeaths (), what + ": counts differ at generation " + generation);
+			}
+			check (sameCells (driver.gather (), colony), what + ": cells differ");
+		}
+		finally
+		{
+			driver.close ();
+		}
+	}
+
+	// Start a shard worker on a thread of this process, serving one driver after another; returns where it is
+	private static InetSocketAddress startWorker () throws IOException
+	{
+		final ServerSocket server = new ServerSocket (0);
+		Thread thread = new Thread (new Runnable ()
+		{
+			public void run ()
+			{
+				while (true)
+				{
+					try
+					{
+						Socket socket = server.accept ();
+						try
+						{
+							new ShardWorker (1).serve (socket);
+						}
+						finally
+						{
+							socket.close ();
+						}
+					}
+					catch (IOException e) // lost the driver; wait for the next one
+					{
+						// (the check that was using it fails on its own)
+					}
+				}
+			}
+		});
+		thread.setDaemon (true);
+		thread.start ();
+		return new InetSocketAddress ("localhost", server.getLocalPort ());
+	}
+}
@@ -1,23 +1,94 @@
-import java.awt.*;
-import java.awt.event.*;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
-import javax.swing.*;
-
-public class Colony 
+public class Colony implements Board
 {
-    private boolean grid[] []; // stores information of entire colony
+    private long cells[]; // stores information of entire colony, 64 cells per long (bit j of word w holds column w * 64 + j)
+    private int rows, columns, words; // size of colony and number of longs in each row
+    private long lastMask; // bits of the last word in a row that are inside the colony
     private double popEradRate; // how successful population/eradication the marquee tool is for population/eradication
+    private ExecutorService executor; // runs bands of rows at the same time (null to step on one thread)
+    private List<Callable<Void>> bands = new ArrayList<Callable<Void>> (); // one task per band of rows
+    private int[] bandBirths = new int [1], bandDeaths = new int [1]; // cells born and died in each band last generation
+    private int population, births, deaths; // number of cells, and cells born and died last generation
+    private long hash; // hash of the cells (see hashWord), kept up to date like the population
+    private long[] bandHashes = new long [1]; // changes to the hash made by each band last generation
+    private long[][] bandCounts = new long [1][], bandAges = new long [1][]; // each band's space for neighbour counts and ages (see advanceTileByRule), kept so stepping doesn't allocate
+    private long[] next; // spare grid the new generation is written into, then swapped with cells
+    private int tileRows; // number of rows of tiles (tiles are TILE_ROWS rows of one word each)
+    private boolean[] changed, nextChanged; // which tiles changed last generation (or were edited), and this generation
+    private final long id = colonies.incrementAndGet (); // tells colonies apart (see getTileVersions)
+    private long version; // goes up every generation and edit
+    private long[] tileVersions; // version the cells of each tile last changed at
+    private Rule rule = Rule.LIFE; // which cells are born and survive
+    private boolean life = true; // rule is Conway's, which nextWord steps without counting neighbours out in full
+    private long[][] ages, nextAges; // bit-sliced age of each dying cell, for both grids (null unless the rule has more than 2 states)
+    private Topology topology = Topology.DEAD; // what is past the edges
+    private long[] west, east, last; // halo: the 64 cells before and after each row, and each row's last word with the columns past its end filled in
+    private long[][] above, below; // halo rows past the top and bottom edges (as many as the rule's radius), from word -1 to word words
+
+    private static final int MIN_PARALLEL_WORDS = 1 << 14; // smaller colonies aren't worth splitting between threads
+    static final int TILE_ROWS = 32; // height of a tile, which is 64 cells wide
+    private static final AtomicLong colonies = new AtomicLong (); // colonies made so far
+    private static final RowStepper wide = findWide (); // steps runs of tiles several words at a time (null if it can't be loaded)
 
     // Default constructor
     public Colony (double density, double popEradRate)
     {
-		grid = new boolean [100] [100]; // set size of grid to 100 * 100
+    	this (100, 100, density, popEradRate); // set size of grid to 100 * 100
+    }
+
+    // Constructor for a colony of any size
+    public Colony (int rows, int columns, double density, double popEradRate)
+    {
+		setSize (rows, columns);
 		this.popEradRate = popEradRate;
-		
+
 		// Fill with cells/spaces
-		for (int row = 0 ; row < grid.length ; row++) // go through colony with nested for loop
-		    for (int col = 0 ; col < grid [0].length ; col++)
-		    	grid [row] [col] = Math.random () < density; // if the float returned is less than the density, put in a cell
+		if (density > 0)
+			for (int row = 0 ; row < rows ; row++) // go through colony with nested for loop
+			    for (int col = 0 ; col < columns ; col++)
+			    	if (Math.random () < density) // if the float returned is less than the density, put in a cell
+			    		setCell (row, col, true);
+    }
+
+    // Empty the colony and change its size
+    public void setSize (int rows, int columns)
+    {
+    	if (rows < 1 || columns < 1 || (long) rows * ((columns + 63) >>> 6) > Integer.MAX_VALUE)
+    		throw new IllegalArgumentException ("Colony can't be " + rows + " by " + columns);
+    	this.rows = rows;
+    	this.columns = columns;
+    	words = (columns + 63) >>> 6; // round up to whole longs
+    	lastMask = -1L >>> (words * 64 - columns); // clear the padding bits past the last column
+    	cells = new long [rows * words];
+    	next = new long [rows * words];
+    	population = births = deaths = 0;
+    	hash = 0;
+    	tileRows = (rows + TILE_ROWS - 1) / TILE_ROWS;
+    	changed = new boolean [tileRows * words]; // both grids are empty, so no tile needs working out yet
+    	nextChanged = new boolean [tileRows * words];
+    	tileVersions = new long [tileRows * words];
+    	Arrays.fill (tileVersions, ++version); // every cell may have changed
+    	int ageBits = 32 - Integer.numberOfLeadingZeros (rule.getStates () - 1); // (room to count to the last state)
+    	ages = rule.getStates () > 2 ? new long [ageBits][rows * words] : null;
+    	nextAges = rule.getStates () > 2 ? new long [ageBits][rows * words] : null;
+    	if (rule.isBornAlone ()) // empty space comes alive, so every tile needs working out
+    		Arrays.fill (changed, true);
+    }
+
+    // Remove every cell
+    public void clear ()
+    {
+    	setSize (rows, columns);
     }
 
     // Setter method for population/eradication rate
@@ -25,79 +96,278 @@ public class Colony
     {
     	this.popEradRate = popEradRate;
     }
-    
-    // Returns number of cells on board
+
+    // Getter method for the rule the colony follows
+    public Rule getRule ()
+    {
+    	return rule;
+    }
+
+    // Setter method for the rule the colony follows (dying cells are removed if the number of states changes)
+    public void setRule (Rule rule)
+    {
+    	if (rule.getStates () != this.rule.getStates ())
+    	{
+    		if (ages != null) // take the dying cells out of the hash
+    			for (int plane = 0; plane < ages.length; plane++)
+    				for (int i = 0; i < cells.length; i++)
+    					hash ^= hashWord (ages [plane] [i], ageIndex (plane, i));
+    		int ageBits = 32 - Integer.numberOfLeadingZeros (rule.getStates () - 1);
+    		ages = rule.getStates () > 2 ? new long [ageBits][cells.length] : null;
+    		nextAges = rule.getStates () > 2 ? new long [ageBits][cells.length] : null;
+    	}
+    	this.rule = rule;
+    	life = rule.isLife ();
+    	Arrays.fill (changed, true); // tiles that had settled down may not stay that way under the new rule
+    }
+
+    // Getter method for what is past the edges of the colony
+    public Topology getTopology ()
+    {
+    	return topology;
+    }
+
+    // Setter method for what is past the edges of the colony
+    public void setTopology (Topology topology)
+    {
+    	this.topology = topology;
+    	Arrays.fill (changed, true); // cells near the edges may not stay the way they are
+    }
+
+    // Returns the state of a cell: 0 for dead, 1 for alive, and 2 and up for dying cells (under Generations rules)
+    public int getState (int row, int column)
+    {
+    	int index = row * words + (column >>> 6), state = 0;
+    	if (isAlive (row, column))
+    		return 1;
+    	if (ages != null)
+    		for (int plane = 0; plane < ages.length; plane++)
+    			if ((ages [plane] [index] & (1L << column)) != 0)
+    				state |= 1 << plane;
+    	return state == 0 ? 0 : state + 1;
+    }
+
+    // Puts a cell into a state (see getState). Dying states only stick under Generations rules with that many states
+    public void setState (int row, int column, int state)
+    {
+    	setCell (row, column, state == 1);
+    	if (ages == null || state < 2 || state >= rule.getStates ())
+    		return;
+    	int index = row * words + (column >>> 6);
+    	for (int plane = 0; plane < ages.length; plane++)
+    		if ((((state - 1) >>> plane) & 1) != 0) // (dying cells' ages are their states - 1)
+    		{
+    			long before = ages [plane] [index];
+    			ages [plane] [index] |= 1L << column;
+    			hash ^= hashWord (before, ageIndex (plane, index)) ^ hashWord (ages [plane] [index], ageIndex (plane, index));
+    		}
+    	changed [(row / TILE_ROWS) * words + (column >>> 6)] = true;
+    }
+
+    // Getter method for number of rows
+    public int getRows ()
+    {
+    	return rows;
+    }
+
+    // Getter method for number of columns
+    public int getColumns ()
+    {
+    	return columns;
+    }
+
+    // Checks if there is a cell at a location
+    public boolean isAlive (int row, int column)
+    {
+    	return (cells [row * words + (column >>> 6)] & (1L << column)) != 0; // shifts only use the low 6 bits of column
+    }
+
+    // Returns the column of the first cell in a row at or after a column, or -1 if there isn't one
+    public int nextAlive (int row, int column)
+    {
+    	if (column >= columns)
+    		return -1;
+    	int start = row * words, w = column >>> 6;
+    	long word = cells [start + w] & (-1L << column); // ignore cells before the column
+    	while (word == 0) // skip 64 spaces at a time
+    	{
+    		if (++w == words)
+    			return -1;
+    		word = cells [start + w];
+    	}
+    	return w * 64 + Long.numberOfTrailingZeros (word);
+    }
+
+    // Puts a cell into (or removes a cell from) a location
+    public void setCell (int row, int column, boolean alive)
+    {
+    	int index = row * words + (column >>> 6);
+    	long before = cells [index];
+    	if (alive)
+    		cells [index] |= 1L << column;
+    	else
+    		cells [index] &= ~(1L << column);
+
+    	if (cells [index] != before)
+    	{
+    		population += alive ? 1 : -1;
+    		hash ^= hashWord (before, index) ^ hashWord (cells [index], index);
+    		touch ((row / TILE_ROWS) * words + (column >>> 6));
+    	}
+    	if (ages != null) // no longer dying
+    		clearAges (index, 1L << column);
+    }
+
+    // Stop cells in a word from dying (under Generations rules), keeping the hash up to date
+    private void clearAges (int index, long bits)
+    {
+    	for (int plane = 0; plane < ages.length; plane++)
+    	{
+    		long before = ages [plane] [index];
+    		if ((before & bits) != 0)
+    		{
+    			ages [plane] [index] &= ~bits;
+    			hash ^= hashWord (before, ageIndex (plane, index)) ^ hashWord (ages [plane] [index], ageIndex (plane, index));
+    			changed [(index / words / TILE_ROWS) * words + index % words] = true;
+    		}
+    	}
+    }
+
+    // Returns the index a word of ages is hashed at (after all the words of cells)
+    private long ageIndex (int plane, int index)
+    {
+    	return (plane + 1L) * cells.length + index;
+    }
+
+    // Getter method for the number of longs in each row
+    public int getWords ()
+    {
+    	return words;
+    }
+
+    // Getter method for 64 cells of a row at once (bit j of word w holds column w * 64 + j)
+    public long getWord (int row, int w)
+    {
+    	return cells [row * words + w];
+    }
+
+    // Puts 64 cells of a row in at once (bits past the last column are left out)
+    public void setWord (int row, int w, long word)
+    {
+    	int index = row * words + w;
+    	if (w == words - 1)
+    		word &= lastMask;
+    	if (ages != null) // no longer dying
+    		clearAges (index, -1L);
+    	long before = cells [index];
+    	if (word == before)
+    		return;
+    	cells [index] = word;
+    	population += Long.bitCount (word) - Long.bitCount (before);
+    	hash ^= hashWord (before, index) ^ hashWord (word, index);
+    	touch ((row / TILE_ROWS) * words + w);
+    }
+
+    // Note that cells in a tile have been edited: it needs working out next generation, and gets a new version
+    private void touch (int tile)
+    {
+    	changed [tile] = true;
+    	tileVersions [tile] = ++version;
+    }
+
+    // Returns number of cells on board (kept up to date as cells are born, die and are edited)
     public int getCellNum ()
     {
-    	int counter = 0;
-    	for (int i = 0; i < grid.length; i++) // go through colony with nested for loop
-    		for (int j = 0; j < grid[0].length; j++)
-    			if (grid [i][j]) // found a cell
-    				counter++;
-    	return counter;
+    	return population;
+    }
+
+    // Returns number of cells born last generation
+    public int getBirths ()
+    {
+    	return births;
     }
-    
+
+    // Returns number of cells that died last generation
+    public int getDeaths ()
+    {
+    	return deaths;
+    }
+
+    // Returns a hash of the cells (colonies with the same cells have the same hash), kept up to date as they change
+    public long getHash ()
+    {
+    	return hash;
+    }
+
+    // Returns the part of the hash for one word of cells at an index. Empty words are 0, and the hash of a colony
+    // is the parts of all its words XORed together, so changing a word only means XORing out its old part and in
+    // its new one
+    static long hashWord (long word, long index)
+    {
+    	if (word == 0)
+    		return 0;
+    	long h = word * 0x9E3779B97F4A7C15L + index * 0xC2B2AE3D27D4EB4FL;
+    	h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL; // mix the bits up (MurmurHash3's finalizer)
+    	h = (h ^ (h >>> 33)) * 0xC4CEB93FE1A85B53L;
+    	return h ^ (h >>> 33);
+    }
+
     // Checks if there are any cells left on the board
     public boolean anyCellsLeft ()
     {
-    	boolean anyCells = false;
-    	for (int i = 0; i < grid.length&& anyCells == false; i++) // go through colony with nested for loop
-    		for (int j = 0; j < grid[0].length && anyCells == false; j++)
-    			if (grid [i][j]) // found a cell
-    				anyCells = true;
-    	return anyCells;
+    	return population > 0;
     }
-    
+
     // Determine if a cell will live in the next generation
     public boolean live (int row, int column)
     {
-    	boolean isAlive = false; 
+    	boolean isAlive = false;
     	int counter = 0; // Counter for number of neighbours
-    	
+
     	// Check above
     	if (column > 0)
     	{
     		// Upper left
     		if (row > 0)
-    			if (grid [row - 1] [column - 1])
+    			if (isAlive (row - 1, column - 1))
     				counter++;
     		// Upper right
-    		if (row < grid.length - 1)
-    			if (grid [row + 1] [column - 1])
+    		if (row < rows - 1)
+    			if (isAlive (row + 1, column - 1))
     				counter++;
     		// Directly above
-    		if (grid [row][column - 1])
+    		if (isAlive (row, column - 1))
     			counter++;
     	}
-    	
+
     	// Check below
-    	if (column < (grid[0].length - 1))
+    	if (column < (columns - 1))
     	{
     		// Lower left
     		if (row > 0)
-    			if (grid [row - 1][column + 1])
+    			if (isAlive (row - 1, column + 1))
     				counter++;
     		// Lower right
-    		if (row < grid.length - 1)
-    			if (grid [row + 1] [column + 1])
+    		if (row < rows - 1)
+    			if (isAlive (row + 1, column + 1))
     				counter++;
     		// Directly below
-    		if (grid [row][column + 1])
+    		if (isAlive (row, column + 1))
     			counter++;
     	}
-    	
+
     	// Check left
     	if (row > 0)
-    		if (grid [row - 1][column])
+    		if (isAlive (row - 1, column))
     			counter++;
-    	
+
     	// Check right
-    	if (row < grid.length - 1)
-    		if (grid [row + 1][column])
+    	if (row < rows - 1)
+    		if (isAlive (row + 1, column))
     			counter++;
-    	
+
     	// Determine fate of the cell
-    	if (!grid [row][column]) // originally dead
+    	if (!isAlive (row, column)) // originally dead
     	{
     		if (counter == 3)
     			isAlive = true;
@@ -107,22 +377,22 @@ public class Colony
     		if ((counter == 2) || (counter == 3)) // if 2 or 3 neighbours, a living cell keeps living
     			isAlive = true;
     	}
-    	
+
     	return isAlive;
     }
-    
+
     // Add cells to an area
     public void populate (int x1, int x2, int y1, int y2)
     {
     	// Go through part of array/grid selected
-    	for (int i = y1; i <= y2; i++) 
+    	for (int i = y1; i <= y2; i++)
     		for (int j = x1; j <= x2; j++)
     		{
-    			if (!grid[i][j]) // if the array element does not have a cell
-    				grid [i] [j] = Math.random () * 100 < popEradRate; 
+    			if (!isAlive (i, j)) // if the location does not have a cell
+    				setCell (i, j, Math.random () * 100 < popEradRate);
     		}
     }
-    
+
     // Delete cells in an area
     public void eradicate (int x1, int x2, int y1, int y2)
     {
@@ -130,68 +400,510 @@ public class Colony
     	for (int i = y1; i <= y2; i++)
     		for (int j = x1; j <= x2; j++)
     		{
-    			if (grid [i] [j]) // if the array element contains a cell 
-    				grid [i] [j] = Math.random () * 100 > popEradRate;
+    			if (isAlive (i, j)) // if the location contains a cell
+    				setCell (i, j, Math.random () * 100 > popEradRate);
     		}
     }
-    
+
     // Populates one square (for freestyle population)
-    public void populateOne (int y, int x) 
+    public void populateOne (int y, int x)
     {
-    	grid [x] [y] = true;
+    	setCell (x, y, true);
+    }
+
+    // Step the colony on several threads, splitting it into bands of tile rows. Pass a null executor to use one thread
+    public void setExecutor (ExecutorService executor, int bandCount)
+    {
+    	this.executor = executor;
+    	bands.clear ();
+    	bandBirths = new int [Math.max (1, bandCount)];
+    	bandDeaths = new int [Math.max (1, bandCount)];
+    	bandHashes = new long [Math.max (1, bandCount)];
+    	bandCounts = new long [Math.max (1, bandCount)][];
+    	bandAges = new long [Math.max (1, bandCount)][];
+    	for (int i = 0; i < bandCount; i++)
+    	{
+    		final int band = i;
+    		final int total = bandCount;
+    		bands.add (new Callable<Void> ()
+    		{
+    			public Void call ()
+    			{
+    				// Each band only reads the current generation and only writes its own tiles of the next one
+    				advanceTiles ((int) ((long) tileRows * band / total), (int) ((long) tileRows * (band + 1) / total), band);
+    				return null;
+    			}
+    		});
+    	}
     }
-    
+
     // Produce next generation of cells in colony
     public void advance ()
     {
-    	boolean[][] temp = new boolean [grid.length][grid[0].length]; // temporary array to store new generation
-    	
-    	// Copy grid to temp
-    	for (int i = 0; i < grid.length; i++) // go through colony with nested for loop
-    		for (int j = 0; j < grid[0].length; j++)
-    			temp [i] [j] = grid [i] [j];
-    	
-    	// Determine new generation
-    	for (int i = 0; i < grid.length; i++) // go through colony with nested for loop
-    		for (int j = 0; j < grid[i].length; j++)
-    		{
-    			if (live (i, j)) // the cell lives
-    				temp [i] [j] = true;
-    			else // the cell dies
-    				temp [i][j] = false;
+    	if (topology != Topology.DEAD)
+    		fillHalo ();
+
+    	// Determine new generation, 64 cells at a time
+    	int bandCount = 1;
+    	if (executor == null || bands.size () < 2 || cells.length < MIN_PARALLEL_WORDS)
+    		advanceTiles (0, tileRows, 0);
+    	else
+    	{
+    		bandCount = bands.size ();
+    		try
+    		{
+    			// invokeAll only returns once every band is done, so no band can see a half finished generation
+    			for (Future<Void> band : executor.invokeAll (bands))
+    				band.get (); // pass on anything that went wrong
+    		}
+    		catch (InterruptedException e)
+    		{
+    			Thread.currentThread ().interrupt ();
+    			throw new IllegalStateException ("Interrupted while advancing colony", e);
+    		}
+    		catch (ExecutionException e)
+    		{
+    			throw new IllegalStateException ("Could not advance colony", e.getCause ());
+    		}
+    	}
+
+    	// Update counters
+    	births = 0;
+    	deaths = 0;
+    	for (int i = 0; i < bandCount; i++)
+    	{
+    		births += bandBirths [i];
+    		deaths += bandDeaths [i];
+    		hash ^= bandHashes [i];
+    	}
+    	population += births - deaths;
+
+    	// Update grid and tile flags; the old generation becomes the spare grid
+    	long[] temp = cells;
+    	cells = next;
+    	next = temp;
+    	boolean[] tempChanged = changed;
+    	changed = nextChanged;
+    	nextChanged = tempChanged;
+    	version++;
+    	for (int i = 0; i < changed.length; i++)
+    		if (changed [i])
+    			tileVersions [i] = version;
+    	long[][] tempAges = ages;
+    	ages = nextAges;
+    	nextAges = tempAges;
+    }
+
+    // Determine the new generation of every tile in a range of tile rows. A tile only needs to be worked out if
+    // it or one of its neighbours changed last generation. Otherwise it stays the same, and since it didn't change
+    // last generation either, the spare grid already holds the right cells for it. Tiles on the edges of a colony
+    // that wraps round have neighbours on the far side, so are always worked out, reading past the edges through
+    // the halo (see near); tiles inside never look past the edges, so use the same code as with a dead border
+    private void advanceTiles (int firstTileRow, int lastTileRow, int band)
+    {
+    	bandBirths [band] = 0;
+    	bandDeaths [band] = 0;
+    	bandHashes [band] = 0;
+    	for (int tileRow = firstTileRow; tileRow < lastTileRow; tileRow++)
+    		for (int w = 0; w < words; w++)
+    		{
+    			boolean active = isActive (tileRow, w);
+    			boolean edge = topology != Topology.DEAD && (tileRow == 0 || tileRow == tileRows - 1 || w == 0 || w == words - 1);
+    			if (active && life && wide != null && tileRow > 0 && tileRow < tileRows - 1 && w > 0) // try a run of tiles
+    			{
+    				int end = w + 1; // (tiles in the first and last row and column read past the edges, so aren't in runs)
+    				while (end < words - 1 && isActive (tileRow, end))
+    					end++;
+    				if (end - w >= wide.getLanes ())
+    				{
+    					advanceRun (cells, next, tileRow, w, end, band);
+    					w = end - 1;
+    					continue;
+    				}
+    			}
+    			nextChanged [tileRow * words + w] = (active || edge) && (life && !edge ? advanceTile (cells, next, tileRow, w, band) : advanceTileByRule (cells, next, tileRow, w, band));
+    		}
+    }
+
+    // Checks if a tile or one of its neighbours changed last generation
+    private boolean isActive (int tileRow, int w)
+    {
+    	for (int i = Math.max (0, tileRow - 1); i <= Math.min (tileRows - 1, tileRow + 1); i++)
+    		for (int j = Math.max (0, w - 1); j <= Math.min (words - 1, w + 1); j++)
+    			if (changed [i * words + j])
+    				return true;
+    	return false;
+    }
+
+    // Returns the row stepper that uses the Java Vector API, or null if it isn't there or the JVM can't run it
+    private static RowStepper findWide ()
+    {
+    	try
+    	{
+    		RowStepper stepper = (RowStepper) Class.forName ("VectorRowStepper").getDeclaredConstructor ().newInstance ();
+    		return stepper.getLanes () > 1 ? stepper : null; // (1 lane is no better than a word at a time)
+    	}
+    	catch (ReflectiveOperationException | LinkageError e) // not built in, or jdk.incubator.vector not added to the JVM
+    	{
+    		return null;
+    	}
+    }
+
+    // Getter method for the number of words stepped at once by the fastest way the JVM has (1 if there is no
+    // vector support)
+    public static int getLanes ()
+    {
+    	return wide == null ? 1 : wide.getLanes ();
+    }
+
+    // Determine the new generation of a run of tiles in the same tile row under Conway's rule, handing each of its
+    // rows to the row stepper, then counting the births and deaths towards the band (see advanceTile). The tiles
+    // are inside the colony, so every word the stepper reads is too
+    private void advanceRun (long[] src, long[] dst, int tileRow, int from, int to, int band)
+    {
+    	int first = tileRow * TILE_ROWS, last = first + TILE_ROWS;
+    	int born = 0, died = 0;
+    	long hashed = 0; // change to the hash
+    	for (int w = from; w < to; w++)
+    		nextChanged [tileRow * words + w] = false;
+    	for (int row = first; row < last; row++)
+    	{
+    		int start = row * words;
+    		wide.step (src, dst, start + from, start + to, words);
+    		for (int i = start + from; i < start + to; i++)
+    			if (dst [i] != src [i])
+    			{
+    				born += Long.bitCount (dst [i] & ~src [i]);
+    				died += Long.bitCount (src [i] & ~dst [i]);
+    				hashed ^= hashWord (src [i], i) ^ hashWord (dst [i], i);
+    				nextChanged [tileRow * words + i - start] = true;
+    			}
+    	}
+    	bandBirths [band] += born;
+    	bandDeaths [band] += died;
+    	bandHashes [band] ^= hashed;
+    }
+
+    // Determine the new generation of one tile (TILE_ROWS rows of one word), counting its births and deaths
+    // towards the band; returns true if any of its cells changed
+    private boolean advanceTile (long[] src, long[] dst, int tileRow, int w, int band)
+    {
+    	int first = tileRow * TILE_ROWS, last = Math.min (first + TILE_ROWS, rows);
+    	boolean hasLeft = w > 0, hasRight = w < words - 1; // cells outside the colony are dead
+    	long mask = hasRight ? -1L : lastMask; // cells can't be born past the last column
+    	int born = 0, died = 0;
+    	long hashed = 0; // change to the hash
+
+    	// Slide a window of three rows down the tile, with the words to the left and right of each
+    	int i = (first - 1) * words + w;
+    	long a0 = first > 0 && hasLeft ? src [i - 1] : 0, a1 = first > 0 ? src [i] : 0, a2 = first > 0 && hasRight ? src [i + 1] : 0;
+    	i += words;
+    	long m0 = hasLeft ? src [i - 1] : 0, m1 = src [i], m2 = hasRight ? src [i + 1] : 0;
+    	long b0, b1, b2;
+    	for (int row = first; row < last; row++, i += words)
+    	{
+    		boolean hasBelow = row < rows - 1;
+    		b0 = hasBelow && hasLeft ? src [i + words - 1] : 0;
+    		b1 = hasBelow ? src [i + words] : 0;
+    		b2 = hasBelow && hasRight ? src [i + words + 1] : 0;
+
+    		long cell = nextWord (a0, a1, a2, m0, m1, m2, b0, b1, b2) & mask;
+    		if (cell != m1)
+    		{
+    			born += Long.bitCount (cell & ~m1);
+    			died += Long.bitCount (m1 & ~cell);
+    			hashed ^= hashWord (m1, i) ^ hashWord (cell, i);
     		}
-    			
-    	grid = temp; // update grid
+    		dst [i] = cell;
+
+    		a0 = m0; a1 = m1; a2 = m2;
+    		m0 = b0; m1 = b1; m2 = b2;
+    	}
+    	bandBirths [band] += born;
+    	bandDeaths [band] += died;
+    	bandHashes [band] ^= hashed;
+    	return born + died > 0;
     }
-    
-    // Update colony
+
+    // Determine the new generation of one tile under a rule other than Conway's (see advanceTile). Neighbours are
+    // counted out to the rule's radius into bit-sliced numbers, which the rule turns into the new cells. Under
+    // Generations rules, cells that die start ageing, and are gone once they reach the last state
+    private boolean advanceTileByRule (long[] src, long[] dst, int tileRow, int w, int band)
+    {
+    	int first = tileRow * TILE_ROWS, last = Math.min (first + TILE_ROWS, rows);
+    	long mask = w < words - 1 ? -1L : lastMask; // cells can't be born past the last column
+    	int radius = rule.getRadius ();
+    	boolean inside = w > 0 && (w + 1) * 64 + radius <= columns && first >= radius && last + radius <= rows; // no need to look in the halo (or past a last word narrower than the radius)
+    	long[] count = bandCounts [band], age = bandAges [band];
+    	if (count == null || count.length != rule.getCountBits ()) // (first time, or the rule has changed)
+    		count = bandCounts [band] = new long [rule.getCountBits ()];
+    	if (ages != null && (age == null || age.length != ages.length))
+    		age = bandAges [band] = new long [ages.length];
+    	int born = 0, died = 0;
+    	long hashed = 0; // change to the hash
+    	boolean aged = false; // any dying cells changed
+
+    	// Window of three rows for rules with a radius of 1 (see advanceTile)
+    	int i = (first - 1) * words + w;
+    	long a0 = inside ? src [i - 1] : near (src, first - 1, w - 1), a1 = inside ? src [i] : near (src, first - 1, w), a2 = inside ? src [i + 1] : near (src, first - 1, w + 1);
+    	i += words;
+    	long m0 = inside ? src [i - 1] : near (src, first, w - 1), m1 = inside ? src [i] : near (src, first, w), m2 = inside ? src [i + 1] : near (src, first, w + 1);
+    	long b0, b1, b2;
+
+    	for (int row = first; row < last; row++, i += words)
+    	{
+    		long before = src [i], dying = 0;
+    		if (ages != null)
+    			for (long[] plane : ages)
+    				dying |= plane [i];
+
+    		long cell;
+    		if (radius == 1)
+    		{
+    			b0 = inside ? src [i + words - 1] : near (src, row + 1, w - 1);
+    			b1 = inside ? src [i + words] : near (src, row + 1, w);
+    			b2 = inside ? src [i + words + 1] : near (src, row + 1, w + 1);
+    			cell = rule.nextWord (a0, a1, a2, m0, m1, m2, b0, b1, b2, dying) & mask;
+    			a0 = m0; a1 = m1; a2 = m2;
+    			m0 = b0; m1 = b1; m2 = b2;
+    		}
+    		else
+    		{
+    			Arrays.fill (count, 0);
+    			for (int y = row - radius; y <= row + radius; y++)
+    			{
+    				int j = y * words + w;
+    				long left = inside ? src [j - 1] : near (src, y, w - 1), middle = inside ? src [j] : near (src, y, w), right = inside ? src [j + 1] : near (src, y, w + 1);
+    				for (int dx = -radius; dx <= radius; dx++) // neighbours dx columns over (bit j + dx)
+    					if (dx < 0)
+    						Rule.add (count, (middle << -dx) | (left >>> (64 + dx)));
+    					else if (dx > 0)
+    						Rule.add (count, (middle >>> dx) | (right << (64 - dx)));
+    					else if (y != row) // (a cell isn't its own neighbour)
+    						Rule.add (count, middle);
+    			}
+    			cell = rule.next (count, before, dying) & mask;
+    		}
+
+    		if (cell != before)
+    		{
+    			born += Long.bitCount (cell & ~before);
+    			died += Long.bitCount (before & ~cell);
+    			hashed ^= hashWord (before, i) ^ hashWord (cell, i);
+    		}
+    		dst [i] = cell;
+
+    		if (ages != null)
+    		{
+    			// Dying cells get a generation older, and cells that just died start dying (at age 1)
+    			long carry = dying;
+    			for (int plane = 0; plane < age.length; plane++)
+    			{
+    				age [plane] = ages [plane] [i] ^ carry;
+    				carry &= ages [plane] [i];
+    			}
+    			age [0] |= before & ~cell;
+    			long gone = Rule.equal (age, rule.getStates () - 1); // past the last state; dead
+    			for (int plane = 0; plane < age.length; plane++)
+    			{
+    				age [plane] &= ~gone;
+    				if (age [plane] != ages [plane] [i])
+    				{
+    					aged = true;
+    					hashed ^= hashWord (ages [plane] [i], ageIndex (plane, i)) ^ hashWord (age [plane], ageIndex (plane, i));
+    				}
+    				nextAges [plane] [i] = age [plane];
+    			}
+    		}
+    	}
+    	bandBirths [band] += born;
+    	bandDeaths [band] += died;
+    	bandHashes [band] ^= hashed;
+    	return born + died > 0 || aged;
+    }
+
+    // Work out the halo around the colony: the cells past its edges, which come from the far side for the
+    // topologies that join edges up. Done once a generation, so stepping the tiles along the edges only has to look
+    // words up
+    private void fillHalo ()
+    {
+    	int radius = rule.getRadius ();
+    	if (west == null || west.length != rows || above.length != radius || above [0].length != words + 2)
+    	{
+    		west = new long [rows];
+    		east = new long [rows];
+    		last = new long [rows];
+    		above = new long [radius][words + 2];
+    		below = new long [radius][words + 2];
+    	}
+    	for (int row = 0; row < rows; row++)
+    	{
+    		west [row] = cellsAt (cells, row, -64);
+    		east [row] = cellsAt (cells, row, words * 64);
+    		last [row] = cellsAt (cells, row, (words - 1) * 64);
+    	}
+    	for (int k = 0; k < radius; k++)
+    		for (int w = -1; w <= words; w++)
+    		{
+    			above [k] [w + 1] = cellsAt (cells, k - radius, w * 64);
+    			below [k] [w + 1] = cellsAt (cells, rows + k, w * 64);
+    		}
+    }
+
+    // Returns word w of a row, where the row and word can be just past the edges of the colony (in the halo around
+    // it). What is there depends on the topology: nothing past a dead border, or cells from the far side
+    private long near (long[] src, int row, int w)
+    {
+    	if (row >= 0 && row < rows)
+    	{
+    		if (w >= 0 && w < words - 1)
+    			return src [row * words + w];
+    		if (topology == Topology.DEAD)
+    			return w == words - 1 ? src [row * words + w] : 0;
+    		return w < 0 ? west [row] : w == words - 1 ? last [row] : east [row];
+    	}
+    	if (topology == Topology.DEAD)
+    		return 0;
+    	return row < 0 ? above [row + above.length] [w + 1] : below [row - rows] [w + 1];
+    }
+
+    // Returns 64 cells of a row, starting at a column (bit j is column + j), wrapping rows and columns that are past
+    // the edges round to the other side if the topology joins them up
+    private long cellsAt (long[] src, int row, int column)
+    {
+    	boolean flipped = false;
+    	if (row < 0 || row >= rows)
+    	{
+    		if (!topology.wrapsRows ())
+    			return 0;
+    		int wraps = row < 0 ? (row + 1) / rows - 1 : row / rows; // times round (rounded down)
+    		row -= wraps * rows;
+    		flipped = topology.flipsRows () && (wraps & 1) != 0;
+    	}
+
+    	// Copy runs of cells that are next to each other in the row
+    	long bits = 0;
+    	for (int filled = 0; filled < 64; )
+    	{
+    		int c = column + filled;
+    		if (topology.wrapsColumns ())
+    			c = (c % columns + columns) % columns;
+    		else if (c < 0) // dead up to column 0
+    		{
+    			filled = Math.min (64, filled - c);
+    			continue;
+    		}
+    		else if (c >= columns) // dead from here on
+    			break;
+    		int take = Math.min (64 - filled, columns - c);
+    		long run = flipped ? Long.reverse (bitsOf (src, row, columns - c - take, take)) >>> (64 - take) : bitsOf (src, row, c, take);
+    		bits |= run << filled;
+    		filled += take;
+    	}
+    	return bits;
+    }
+
+    // Returns n cells (1 to 64) of a row, starting at a column inside the colony, in the low bits
+    private long bitsOf (long[] src, int row, int column, int n)
+    {
+    	int index = row * words + (column >>> 6), shift = column & 63;
+    	long bits = src [index] >>> shift;
+    	if (shift > 0 && (column >>> 6) < words - 1)
+    		bits |= src [index + 1] << (64 - shift);
+    	return n == 64 ? bits : bits & ((1L << n) - 1);
+    }
+
+    // Determine the new generation of the 64 cells in m1, given the words to its left (x0) and right (x2)
+    // in the rows above (a), itself (m) and below (b). Neighbours are counted with bitwise adders, so every
+    // cell in the word is handled at once
+    static long nextWord (long a0, long a1, long a2, long m0, long m1, long m2, long b0, long b1, long b2)
+    {
+    	// Neighbours to the left and right of each cell (bit j - 1 and bit j + 1, borrowing from the next word over)
+    	long aL = (a1 << 1) | (a0 >>> 63), aR = (a1 >>> 1) | (a2 << 63);
+    	long mL = (m1 << 1) | (m0 >>> 63), mR = (m1 >>> 1) | (m2 << 63);
+    	long bL = (b1 << 1) | (b0 >>> 63), bR = (b1 >>> 1) | (b2 << 63);
+
+    	// Add up each row of neighbours into a two bit number (ones and twos)
+    	long aOnes = aL ^ a1 ^ aR, aTwos = (aL & a1) | (aR & (aL ^ a1));
+    	long mOnes = mL ^ mR, mTwos = mL & mR;
+    	long bOnes = bL ^ b1 ^ bR, bTwos = (bL & b1) | (bR & (bL ^ b1));
+
+    	// Add the three rows together (the eights bit is dropped: 8 neighbours looks like 0, which is also death)
+    	long ones = aOnes ^ mOnes ^ bOnes, carry = (aOnes & mOnes) | (bOnes & (aOnes ^ mOnes));
+    	long twosSum = aTwos ^ mTwos ^ bTwos, twosCarry = (aTwos & mTwos) | (bTwos & (aTwos ^ mTwos));
+    	long twos = twosSum ^ carry, fours = twosCarry ^ (twosSum & carry);
+
+    	// A cell lives with 3 neighbours, or with 2 neighbours if it was already alive
+    	return ~fours & twos & (ones | m1);
+    }
+
+    // Copy another colony's cells into this one with its top left corner at (row, column), clipping at the edges
+    public void place (Colony pattern, int row, int column)
+    {
+    	for (int i = Math.max (0, -row); i < pattern.rows && i + row < rows; i++)
+    		for (int j = Math.max (0, -column); j < pattern.columns && j + column < columns; j++)
+    			if (pattern.isAlive (i, j))
+    				setCell (i + row, j + column, true);
+    }
+
+    // Update colony (cells are copied, so the caller can keep using its array)
     public void setColony (boolean[][] temp)
     {
-    	grid = temp;
+    	setSize (temp.length, temp [0].length);
+    	for (int i = 0; i < rows; i++) // go through colony with nested for loop
+    		for (int j = 0; j < columns; j++)
+    			if (temp [i] [j])
+    				setCell (i, j, true);
     }
-    
-    // Getter method for colony's array
+
+    // Getter method for colony's array (a copy that won't change as the colony advances; use isAlive to read single cells)
     public boolean[][] getGrid ()
     {
+    	boolean[][] grid = new boolean [rows][columns];
+    	for (int i = 0; i < rows; i++) // go through colony with nested for loop
+    		for (int j = 0; j < columns; j++)
+    			grid [i] [j] = isAlive (i, j);
     	return grid;
     }
-    
-    // Converts colony to a text representation to store in text file later
+
+    // Getter method for a copy of the cells, 64 per long, row by row (each row starts a new long)
+    public long[] getCells ()
+    {
+    	return cells.clone ();
+    }
+
+    // Returns the version the cells of each tile (TILE_ROWS rows of one word, row by row) last changed at: what
+    // changed between two copies of the same colony (see getId) is in the tiles with versions newer than getVersion
+    // was when the first was made. A copy, so it won't change as the colony does
+    public long[] getTileVersions ()
+    {
+    	return tileVersions.clone ();
+    }
+
+    // Getter method for the version the colony is at (see getTileVersions)
+    public long getVersion ()
+    {
+    	return version;
+    }
+
+    // Getter method for a number no other colony made by this JVM has
+    public long getId ()
+    {
+    	return id;
+    }
+
+    // Converts colony to a text representation (RLE format, the same as saved files)
     public String toString ()
     {
-    	String arrayString = "";
-    	
-    	// Produce text representation
-    	for (int i = 0; i < grid.length; i++) // go through colony with nested for loop
-    		for (int j = 0; j < grid[i].length; j++)
-    		{
-    			// 1s represent cells and 0s represent spaces
-    			if (grid[i][j])
-    				arrayString += " 1"; // space to separate numbers (so that Scanner's nextInt function can read it)
-    			else
-    				arrayString += " 0";
-    		}
-    	
-    	return arrayString;
+    	StringWriter arrayString = new StringWriter ();
+    	try
+    	{
+    		ColonyFile.write (this, arrayString);
+    	}
+    	catch (IOException e) // StringWriter doesn't throw these
+    	{
+    		throw new IllegalStateException (e);
+    	}
+    	return arrayString.toString ();
     }
 }
@@ -0,0 +1,558 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+// Reads and writes colony files. Colonies are saved in the standard Life RLE format (run length encoded:
+// "x = 5, y = 3" then runs like "2b3o$" for 2 spaces, 3 cells and the end of a row). Colonies following
+// Generations rules are saved with a letter for each state instead, as Golly does: "." for empty, "A" for alive,
+// and "B" on for dying cells (then "pA" to "pX", "qA" and so on past "X"). Files in the old format of space
+// separated 1s (cells) and 0s (spaces), row by row, can still be loaded
+public class ColonyFile
+{
+	private static final Charset ASCII = Charset.forName ("US-ASCII");
+	private static final int LINE_LENGTH = 70; // longest line RLE files are supposed to have
+
+	// Load a colony from a file. RLE files hold their own size. Old format files only hold cells, so their size
+	// is taken to be rows * columns if the number of cells matches, or a square otherwise. Returns null if the
+	// file is not legal
+	public static Colony load (File file, int rows, int columns, double popEradRate) throws FileNotFoundException
+	{
+		return load (new FileInputStream (file), rows, columns, popEradRate);
+	}
+
+	// Load a colony from a stream (see above)
+	public static Colony load (InputStream in, int rows, int columns, double popEradRate)
+	{
+		PushbackInputStream stream = new PushbackInputStream (in);
+		try
+		{
+			// Look at the first character that isn't a space to tell the formats apart (spaces don't matter to either)
+			int c;
+			do
+				c = stream.read ();
+			while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+			if (c != -1)
+				stream.unread (c);
+
+			if (c == '#' || c == 'x') // RLE files start with comments or the size
+				return loadRle (new BufferedReader (new InputStreamReader (stream, ASCII)), popEradRate);
+			return loadText (stream, rows, columns, popEradRate);
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+		finally
+		{
+			try
+			{
+				stream.close ();
+			}
+			catch (IOException e)
+			{
+				// nothing more to do
+			}
+		}
+	}
+
+	// Load a colony saved as space separated 0s and 1s. The bytes are decoded straight from a buffer, 64 KB at a
+	// time, rather than going through Scanner, which is far too slow for big colonies
+	private static Colony loadText (InputStream in, int rows, int columns, double popEradRate) throws IOException
+	{
+		byte[] buffer = new byte [1 << 16];
+		long[] bits = new long [1024]; // 1s and 0s read so far, 64 per long
+		long counter = 0; // Check if text file is legal
+		int number = -1; // number being read (-1 between numbers); only matters if it is 1, so it stops at 2
+		boolean reading = true;
+
+		while (reading)
+		{
+			int length = in.read (buffer);
+			if (length == -1) // end of file; finish the last number
+			{
+				length = 1;
+				buffer [0] = ' ';
+				reading = false;
+			}
+
+			for (int i = 0; i < length; i++)
+			{
+				byte b = buffer [i];
+				if (b >= '0' && b <= '9')
+					number = Math.min (2, (number < 0 ? 0 : number * 10) + (b - '0'));
+				else if (b == ' ' || b == '\n' || b == '\r' || b == '\t')
+				{
+					if (number >= 0) // end of a number
+					{
+						if ((counter >>> 6) == bits.length) // out of room; double the space
+							bits = Arrays.copyOf (bits, bits.length * 2);
+						if (number == 1) // 1s represent true/has cell
+							bits [(int) (counter >>> 6)] |= 1L << counter;
+						counter++;
+						number = -1;
+					}
+				}
+				else // not a number; stop reading, like Scanner.hasNextInt would
+				{
+					reading = false;
+					break;
+				}
+			}
+		}
+
+		// Work out the size of the colony
+		if (counter == 0 || counter != (long) rows * columns)
+		{
+			rows = (int) Math.sqrt (counter);
+			columns = rows;
+			if (counter == 0 || (long) rows * columns != counter) // not a rectangle we can recognize
+				return null;
+		}
+
+		// Copy cells into a new colony
+		Colony colony = new Colony (rows, columns, 0, popEradRate);
+		for (int i = 0; i < bits.length; i++)
+			for (long word = bits [i]; word != 0; word &= word - 1) // go through each 1 in the word
+			{
+				long index = i * 64L + Long.numberOfTrailingZeros (word);
+				colony.setCell ((int) (index / columns), (int) (index % columns), true);
+			}
+		return colony;
+	}
+
+	// Load a colony saved in RLE format
+	private static Colony loadRle (BufferedReader in, double popEradRate) throws IOException
+	{
+		RleHeader header = RleHeader.read (in);
+		if (header == null)
+			return null;
+		int rows = header.rows, columns = header.columns;
+
+		// Read runs of cells
+		Colony colony = new Colony (rows, columns, 0, popEradRate);
+		colony.setRule (header.rule);
+		int row = 0, column = 0, count = 0, prefix = 0;
+		for (int c = in.read (); c != -1 && c != '!'; c = in.read ())
+		{
+			if (c >= '0' && c <= '9')
+			{
+				count = count * 10 + (c - '0');
+				continue;
+			}
+			if (Character.isWhitespace (c))
+				continue;
+			if (c >= 'p' && c <= 'y') // first letter of a state past X
+			{
+				prefix = c - 'p' + 1;
+				continue;
+			}
+
+			int run = Math.max (1, count); // a run without a number is one long
+			count = 0;
+			if (c == '$') // end of row(s)
+			{
+				row += run;
+				column = 0;
+			}
+			else if (c == 'b' || c == '.') // spaces
+				column += run;
+			else
+			{
+				int state = state (prefix, c);
+				prefix = 0;
+				if (state == -1 || state >= header.rule.getStates ()) // not a state, or one the rule doesn't have
+					return null;
+				if (row >= rows || column + run > columns) // cells outside the colony; not legal
+					return null;
+				for (int i = 0; i < run; i++)
+					colony.setState (row, column++, state);
+			}
+		}
+		return colony;
+	}
+
+	// Returns the state of cells in a run from its letter and the letter before it (p to y for states past X, or
+	// 0 if there isn't one), or -1 if they aren't a state
+	private static int state (int prefix, int c)
+	{
+		if (c == 'o' && prefix == 0)
+			return 1;
+		if (c >= 'A' && c <= 'X')
+			return prefix * 24 + c - 'A' + 1;
+		return -1;
+	}
+
+	// Returns the letters for a state (see above)
+	private static String letters (int state)
+	{
+		if (state <= 24)
+			return String.valueOf ((char) ('A' + state - 1));
+		return String.valueOf ((char) ('p' + (state - 25) / 24)) + (char) ('A' + (state - 25) % 24);
+	}
+
+	// The size and rule from the header line of an RLE file ("x = 5, y = 3, rule = B3/S23")
+	private static class RleHeader
+	{
+		int rows = -1, columns = -1;
+		Rule rule = Rule.LIFE;
+
+		// Skip comments, then read the header; returns null if it isn't legal or has a rule we can't follow
+		static RleHeader read (BufferedReader in) throws IOException
+		{
+			String line = in.readLine ();
+			while (line != null && (line.trim ().isEmpty () || line.trim ().startsWith ("#")))
+				line = in.readLine ();
+			if (line == null)
+				return null;
+
+			RleHeader header = new RleHeader ();
+			int ruleStart = line.indexOf ("rule"); // (Larger than Life rules have commas in them, so come off first)
+			if (ruleStart != -1)
+			{
+				String[] pair = line.substring (ruleStart).split ("=", 2);
+				line = line.substring (0, ruleStart);
+				if (pair.length != 2)
+					return null;
+				try
+				{
+					header.rule = Rule.parse (pair [1]);
+				}
+				catch (IllegalArgumentException e) // rule we can't follow
+				{
+					return null;
+				}
+			}
+			for (String part : line.split (","))
+			{
+				if (part.trim ().isEmpty ())
+					continue;
+				String[] pair = part.split ("=");
+				if (pair.length != 2)
+					return null;
+				try
+				{
+					if (pair [0].trim ().equals ("x"))
+						header.columns = Integer.parseInt (pair [1].trim ());
+					else if (pair [0].trim ().equals ("y"))
+						header.rows = Integer.parseInt (pair [1].trim ());
+				}
+				catch (NumberFormatException e)
+				{
+					return null;
+				}
+			}
+			return header.rows < 1 || header.columns < 1 ? null : header;
+		}
+	}
+
+	// Open a colony file to be read a row at a time, for colonies too big to load whole (see ShardDriver); the size
+	// of old format files is worked out as load does, by counting their cells first. Returns null if the file is
+	// not legal as far as can be told without reading all its cells
+	public static RowReader openRows (File file, int rows, int columns) throws IOException
+	{
+		InputStream in = new BufferedInputStream (new FileInputStream (file), 1 << 16);
+		try
+		{
+			int c;
+			do
+			{
+				in.mark (1);
+				c = in.read ();
+			}
+			while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+			in.reset ();
+
+			if (c == '#' || c == 'x')
+			{
+				BufferedReader reader = new BufferedReader (new InputStreamReader (in, ASCII), 1 << 16);
+				RleHeader header = RleHeader.read (reader);
+				if (header == null)
+				{
+					reader.close ();
+					return null;
+				}
+				return new RowReader (reader, null, header.rows, header.columns, header.rule);
+			}
+
+			// Count the cells, then start again from the beginning
+			long counter = 0;
+			RowReader counting = new RowReader (null, in, 0, 0, Rule.LIFE);
+			while (counting.nextNumber () != -1)
+				counter++;
+			in.close ();
+			if (counter == 0 || counter != (long) rows * columns)
+			{
+				rows = (int) Math.sqrt (counter);
+				columns = rows;
+				if (counter == 0 || (long) rows * columns != counter)
+					return null;
+			}
+			return new RowReader (null, new BufferedInputStream (new FileInputStream (file), 1 << 16), rows, columns, Rule.LIFE);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			in.close ();
+			throw e;
+		}
+	}
+
+	// Reads a colony file a row at a time (see openRows). Only live cells are read: cells of Generations rules
+	// that are dying come out empty
+	public static class RowReader implements Closeable
+	{
+		private final BufferedReader rle; // the file's runs, if it is an RLE file
+		private final InputStream text; // or its 1s and 0s, if it is an old format one
+		private final int rows, columns;
+		private final Rule rule;
+		private final byte[] buffer = new byte [1 << 16]; // bytes of an old format file read but not used yet
+		private int position, length; // where they are in the buffer
+		private int next; // row to be read next
+		private int row, column, count, prefix; // row and column the RLE runs have reached, and the number and first letter of the next run
+
+		// Constructor
+		RowReader (BufferedReader rle, InputStream text, int rows, int columns, Rule rule)
+		{
+			this.rle = rle;
+			this.text = text;
+			this.rows = rows;
+			this.columns = columns;
+			this.rule = rule;
+		}
+
+		// Getter methods for the size of the colony and the rule in the file (Conway's for old format files)
+		public int getRows ()
+		{
+			return rows;
+		}
+
+		public int getColumns ()
+		{
+			return columns;
+		}
+
+		public Rule getRule ()
+		{
+			return rule;
+		}
+
+		// Read the next row into words (bit j of word w is column w * 64 + j; there have to be enough words for the
+		// columns); throws IOException if there are no rows left or the file isn't legal
+		public void readRow (long[] words) throws IOException
+		{
+			if (next >= rows)
+				throw new IOException ("No rows left");
+			Arrays.fill (words, 0);
+			if (rle != null)
+				readRleRow (words);
+			else
+				for (int column = 0; column < columns; column++)
+				{
+					int number = nextNumber ();
+					if (number == -1)
+						throw new IOException ("File ended early");
+					if (number == 1)
+						words [column >>> 6] |= 1L << column;
+				}
+			next++;
+		}
+
+		// Read the runs of the next row of an RLE file (nothing if it is one of a run of empty rows)
+		private void readRleRow (long[] words) throws IOException
+		{
+			if (next < row) // empty row
+				return;
+			for (int c = rle.read (); c != -1 && c != '!'; c = rle.read ())
+			{
+				if (c >= '0' && c <= '9')
+				{
+					count = count * 10 + (c - '0');
+					continue;
+				}
+				if (Character.isWhitespace (c))
+					continue;
+				if (c >= 'p' && c <= 'y')
+				{
+					prefix = c - 'p' + 1;
+					continue;
+				}
+
+				int run = Math.max (1, count); // a run without a number is one long
+				count = 0;
+				if (c == '$') // end of row(s)
+				{
+					row += run;
+					column = 0;
+					return;
+				}
+				else if (c == 'b' || c == '.') // spaces
+					column += run;
+				else
+				{
+					int state = state (prefix, c);
+					prefix = 0;
+					if (state == -1 || state >= rule.getStates ())
+						throw new IOException ("Not a state of " + rule + ": " + (char) c);
+					if (column + run > columns) // cells outside the colony; not legal
+						throw new IOException ("Cells past the last column");
+					if (state == 1)
+						for (int end = column + run; column < end; column++)
+							words [column >>> 6] |= 1L << column;
+					else
+						column += run;
+				}
+			}
+			row = Integer.MAX_VALUE; // end of the cells; the rest of the rows are empty
+		}
+
+		// Returns the next number in an old format file (only 0, 1 or 2 for anything larger), or -1 at the end of
+		// the numbers (like loadText, the first thing that isn't a number or a space ends them)
+		int nextNumber () throws IOException
+		{
+			int number = -1;
+			while (true)
+			{
+				if (position == length)
+				{
+					length = text.read (buffer);
+					position = 0;
+					if (length == -1) // end of file
+					{
+						length = 0;
+						return number;
+					}
+				}
+				byte b = buffer [position];
+				if (b >= '0' && b <= '9')
+					number = Math.min (2, (number < 0 ? 0 : number * 10) + (b - '0'));
+				else if (b == ' ' || b == '\n' || b == '\r' || b == '\t')
+				{
+					if (number >= 0)
+						return number;
+				}
+				else // stop reading
+				{
+					return -1;
+				}
+				position++;
+			}
+		}
+
+		// Close the file
+		public void close () throws IOException
+		{
+			if (rle != null)
+				rle.close ();
+			else
+				text.close ();
+		}
+	}
+
+	// Save a colony to a file in RLE format
+	public static void save (Board colony, File file) throws IOException
+	{
+		BufferedWriter bufferedWriter = new BufferedWriter (new FileWriter (file));
+		try
+		{
+			write (colony, bufferedWriter);
+		}
+		finally
+		{
+			bufferedWriter.close (); // close buffered writer
+		}
+	}
+
+	// Write a colony in RLE format. Spaces at the ends of rows and empty rows at the end are left out
+	public static void write (Board colony, Writer out) throws IOException
+	{
+		out.write ("x = " + colony.getColumns () + ", y = " + colony.getRows () + ", rule = " + colony.getRule () + "\n");
+
+		RunWriter runs = new RunWriter (out);
+		int rowEnds = 0; // rows finished but not written yet (so empty rows can go in one run)
+		Colony states = colony instanceof Colony && colony.getRule ().getStates () > 2 ? (Colony) colony : null; // (has dying cells to write)
+		for (int row = 0; row < colony.getRows (); row++)
+		{
+			int column = 0; // columns written so far in this row
+			if (states != null) // runs of each state
+			{
+				for (int start = 0, end; start < colony.getColumns (); start = end)
+				{
+					int state = states.getState (row, start);
+					for (end = start + 1; end < colony.getColumns () && states.getState (row, end) == state; end++)
+						;
+					if (state != 0)
+					{
+						runs.write (rowEnds, "$");
+						rowEnds = 0;
+						runs.write (start - column, ".");
+						runs.write (end - start, letters (state));
+						column = end;
+					}
+				}
+				rowEnds++;
+				continue;
+			}
+			for (int start = colony.nextAlive (row, 0); start != -1; )
+			{
+				// Find the end of this run of cells
+				int end = start + 1, following;
+				while ((following = colony.nextAlive (row, end)) == end)
+					end++;
+
+				runs.write (rowEnds, '$');
+				rowEnds = 0;
+				runs.write (start - column, 'b');
+				runs.write (end - start, 'o');
+				column = end;
+				start = following;
+			}
+			rowEnds++;
+		}
+		runs.write (1, '!');
+		out.write ('\n');
+	}
+
+	// Writes runs like "12b", keeping lines short
+	private static class RunWriter
+	{
+		private Writer out;
+		private int lineLength; // characters on the current line
+
+		// Constructor
+		RunWriter (Writer out)
+		{
+			this.out = out;
+		}
+
+		// Write a run of count of a tag (nothing if count is 0)
+		void write (int count, char tag) throws IOException
+		{
+			write (count, String.valueOf (tag));
+		}
+
+		void write (int count, String tag) throws IOException
+		{
+			if (count == 0)
+				return;
+			String run = count == 1 ? tag : count + tag;
+			if (lineLength + run.length () > LINE_LENGTH) // start a new line
+			{
+				out.write ('\n');
+				lineLength = 0;
+			}
+			out.write (run);
+			lineLength += run.length ();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+import java.util.HashMap;
+import java.util.Map;
+
+// Spots when a colony starts repeating itself: settling into a still life (period 1), or an oscillator or anything
+// else that comes back to the same cells every p generations. The hashes (see Board.getHash) of the last few
+// generations are kept in a table; once a generation's cells match one of them, the colony will repeat forever
+public class CycleDetector
+{
+	public static final int DEFAULT_HISTORY = 4096; // longest period spotted by default
+
+	private final long[] hashes; // hashes of the last generations, oldest overwritten first
+	private final long[] populations; // their populations (checked too, in case two hashes are the same by chance)
+	private final long[] generations; // their generation numbers
+	private final Map<Long, Integer> seen = new HashMap<Long, Integer> (); // place in the arrays of each hash
+	private int next, count; // where the next generation goes, and how many are kept
+	private long period, onset = -1; // cycle found (0 and -1 until there is one)
+
+	// Constructor that remembers the default number of generations
+	public CycleDetector ()
+	{
+		this (DEFAULT_HISTORY);
+	}
+
+	// Constructor; cycles up to history generations long can be spotted
+	public CycleDetector (int history)
+	{
+		if (history < 1)
+			throw new IllegalArgumentException ("History can't be " + history + " generations");
+		hashes = new long [history];
+		populations = new long [history];
+		generations = new long [history];
+	}
+
+	// Forget every generation (after the colony has been edited)
+	public void reset ()
+	{
+		seen.clear ();
+		next = 0;
+		count = 0;
+		period = 0;
+		onset = -1;
+	}
+
+	// Add a colony's cells as they are at a generation; returns true if the colony has started repeating
+	public boolean add (Board colony, long generation)
+	{
+		return add (colony.getHash (), colony.getCellNum (), generation);
+	}
+
+	// Add a generation of a colony that isn't a Board (such as a ShardDriver's) by its hash and population
+	public boolean add (long hash, long population, long generation)
+	{
+		if (period > 0) // already found
+			return true;
+
+		Integer match = seen.get (hash);
+		if (match != null && populations [match] == population) // same cells as before
+		{
+			period = generation - generations [match];
+			onset = generations [match];
+			return true;
+		}
+
+		// Remember this generation, forgetting the oldest one once the table is full
+		if (count == hashes.length)
+		{
+			Integer oldest = seen.get (hashes [next]);
+			if (oldest != null && oldest == next) // (a newer generation may have had the same hash)
+				seen.remove (hashes [next]);
+		}
+		else
+			count++;
+		hashes [next] = hash;
+		populations [next] = population;
+		generations [next] = generation;
+		seen.put (hash, next);
+		next = (next + 1) % hashes.length;
+		return false;
+	}
+
+	// Returns true once the colony has started repeating
+	public boolean found ()
+	{
+		return period > 0;
+	}
+
+	// Getter method for the number of generations between repeats (0 if the colony isn't repeating)
+	public long getPeriod ()
+	{
+		return period;
+	}
+
+	// Getter method for the first generation of the cycle (-1 if the colony isn't repeating)
+	public long getOnset ()
+	{
+		return onset;
+	}
+}
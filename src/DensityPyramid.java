@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+// Numbers of cells in square blocks of a colony, 2^level cells wide, for each level up to MAX_LEVEL: a pyramid of
+// populations for drawing colonies zoomed out past one cell per pixel. A level is only made once something asks for
+// it, and is then kept up to date from snapshot to snapshot by recounting only the 64 * 64 tiles whose cells changed.
+// Snapshots of a Colony say which of its tiles changed (see Colony.getTileVersions), so finding them takes a look at
+// each tile; for other boards, the cells are compared with the last snapshot's. Blocks up to 64 wide are counted
+// straight from the cells; bigger ones add up four blocks of the level below
+class DensityPyramid
+{
+	static final int MAX_LEVEL = 15; // (a block that wide holds at most 2^30 cells, so its count fits in an int)
+	private static final int TILE_LEVEL = 6; // tiles are 64 * 64 cells (64 rows of one long)
+
+	private Snapshot colony; // snapshot the counts are up to date with
+	private int[][] counts = new int [MAX_LEVEL + 1][]; // counts [level] [blockRow * blockColumns + blockColumn] (null until asked for)
+	private int tileRows, tileColumns; // size of the colony in tiles
+	private boolean[] dirty; // tiles that need recounting
+
+	// Getter method for the snapshot the counts are for
+	Snapshot getSnapshot ()
+	{
+		return colony;
+	}
+
+	// Number of blocks down and across at a level
+	int getRows (int level)
+	{
+		return ((colony.rows - 1) >> level) + 1;
+	}
+
+	int getColumns (int level)
+	{
+		return ((colony.columns - 1) >> level) + 1;
+	}
+
+	// Bring the counts up to date with a snapshot
+	void update (Snapshot snapshot)
+	{
+		if (snapshot == colony) // nothing has changed
+			return;
+		if (colony == null || snapshot.rows != colony.rows || snapshot.columns != colony.columns) // different size; start again
+		{
+			colony = snapshot;
+			counts = new int [MAX_LEVEL + 1][];
+			tileRows = ((colony.rows - 1) >> TILE_LEVEL) + 1;
+			tileColumns = colony.words;
+			dirty = new boolean [tileRows * tileColumns];
+			return;
+		}
+
+		// Find the tiles with changed cells: from the versions of the colony's own tiles (a few to each of these) if
+		// both snapshots are of the same Colony, or else by comparing the cells
+		boolean anyDirty = false, versioned = snapshot.tileVersions != null && colony.tileVersions != null && snapshot.colonyId == colony.colonyId;
+		int colonyTiles = (1 << TILE_LEVEL) / Colony.TILE_ROWS, colonyTileRows = versioned ? snapshot.tileVersions.length / colony.words : 0;
+		for (int tileRow = 0; tileRow < tileRows; tileRow++)
+			for (int w = 0; w < tileColumns; w++)
+			{
+				boolean changed = false;
+				if (versioned)
+					for (int i = tileRow * colonyTiles; i < Math.min (colonyTileRows, (tileRow + 1) * colonyTiles) && !changed; i++)
+						changed = snapshot.tileVersions [i * colony.words + w] > colony.version;
+				else
+					for (int row = tileRow << TILE_LEVEL; row < Math.min (colony.rows, (tileRow + 1) << TILE_LEVEL) && !changed; row++)
+						changed = snapshot.cells [row * colony.words + w] != colony.cells [row * colony.words + w];
+				dirty [tileRow * tileColumns + w] = changed;
+				anyDirty |= changed;
+			}
+		colony = snapshot;
+
+		// Recount them at every level that has been made (smallest first, since bigger blocks add up smaller ones)
+		if (anyDirty)
+			for (int level = 1; level <= MAX_LEVEL; level++)
+				if (counts [level] != null)
+					recount (level);
+	}
+
+	// Returns the counts at a level (1 or more), making the level if it hasn't been made yet
+	int[] get (int level)
+	{
+		if (counts [level] == null)
+		{
+			if (level > TILE_LEVEL)
+				get (level - 1); // made out of the level below
+			counts [level] = new int [getRows (level) * getColumns (level)];
+			boolean[] marked = dirty;
+			dirty = new boolean [marked.length];
+			Arrays.fill (dirty, true); // count everything
+			recount (level);
+			dirty = marked;
+		}
+		return counts [level];
+	}
+
+	// Recount the blocks of a level that cover dirty tiles
+	private void recount (int level)
+	{
+		int[] count = counts [level];
+		int blockColumns = getColumns (level);
+		for (int tileRow = 0; tileRow < tileRows; tileRow++)
+			for (int w = 0; w < tileColumns; w++)
+				if (dirty [tileRow * tileColumns + w])
+				{
+					if (level <= TILE_LEVEL) // count cells in each block of the tile
+					{
+						int size = 1 << level;
+						long mask = -1L >>> (64 - size); // cells of the first block in a long
+						for (int top = tileRow << TILE_LEVEL; top < Math.min (colony.rows, (tileRow + 1) << TILE_LEVEL); top += size)
+							for (int shift = 0; shift < 64 && (w << 6) + shift < colony.columns; shift += size)
+							{
+								int cells = 0;
+								for (int row = top; row < Math.min (colony.rows, top + size); row++)
+									cells += Long.bitCount (colony.cells [row * colony.words + w] & (mask << shift));
+								count [(top >> level) * blockColumns + (((w << 6) + shift) >> level)] = cells;
+							}
+					}
+					else // add up the four blocks of the level below that make up the block this tile is in
+					{
+						int blockRow = tileRow >> (level - TILE_LEVEL), blockColumn = w >> (level - TILE_LEVEL);
+						int[] below = counts [level - 1];
+						int belowRows = getRows (level - 1), belowColumns = getColumns (level - 1);
+						int cells = 0;
+						for (int i = blockRow * 2; i < Math.min (belowRows, blockRow * 2 + 2); i++)
+							for (int j = blockColumn * 2; j < Math.min (belowColumns, blockColumn * 2 + 2); j++)
+								cells += below [i * belowColumns + j];
+						count [blockRow * blockColumns + blockColumn] = cells;
+					}
+				}
+	}
+}
@@ -0,0 +1,378 @@
+import java.util.Arrays;
+
+// Advances a colony huge numbers of generations at once using Gosper's HashLife algorithm.
+// The colony is stored as a quadtree in which identical squares are shared, and the future of every
+// square is remembered, so repeating patterns (guns, puffers, oscillators) only ever get worked out once.
+// The plane has no edges, unlike Colony; cells that go past the colony's edges are cut off when copied back.
+// It can grow to 2^MAX_LEVEL cells wide (so every coordinate fits in a long), which is enough to step 2^MAX_STEP
+// generations at once; longer advances are made of several such steps, and a pattern that grows past the edges of
+// the largest plane stops with an IllegalStateException. Memory is kept to a limit by throwing away nodes that aren't
+// in use, whenever there are too many, even in the middle of a step
+public class HashLife
+{
+	// A square of cells 2^level wide. Squares are never changed once made, and there is only one of each
+	private static final class Node
+	{
+		final Node nw, ne, sw, se; // quarters of the square (null for single cells)
+		final int level; // square is 2^level cells wide
+		final long population; // number of cells in the square
+		final int hash;
+		Node result; // middle half of the square, resultStep generations later
+		int resultStep; // result is 2^resultStep generations ahead
+		Node chain; // next node in the same bucket of the hash table
+
+		// Constructor for a single cell
+		Node (boolean alive)
+		{
+			nw = ne = sw = se = null;
+			level = 0;
+			population = alive ? 1 : 0;
+			hash = alive ? 1 : 0;
+		}
+
+		// Constructor for a square made of four smaller squares
+		Node (Node nw, Node ne, Node sw, Node se, int hash)
+		{
+			this.nw = nw;
+			this.ne = ne;
+			this.sw = sw;
+			this.se = se;
+			level = nw.level + 1;
+			population = nw.population + ne.population + sw.population + se.population;
+			this.hash = hash;
+		}
+	}
+
+	private static final Node DEAD = new Node (false), ALIVE = new Node (true);
+	private static final int NODE_BYTES = 80; // rough size of a node and its place in the hash table
+	private static final int MAX_LEVEL = 62; // widest plane (2^62 cells, centred on (0, 0))
+	private static final int MAX_STEP = MAX_LEVEL - 3; // most generations stepped at once (2^59), as the root has to be 2^(k + 3) wide to step 2^k
+
+	private Node[] table = new Node [1 << 16]; // hash table of every node (so each square is only made once)
+	private int size; // number of nodes in the table
+	private long maxNodes; // throw away remembered futures once there are more nodes than this
+	private long collectAt; // number of nodes to collect at (more than maxNodes if the nodes in use don't fit in it)
+	private final Node[] empty = new Node [MAX_LEVEL + 1]; // empty square of each level
+	private Node[] working = new Node [64]; // nodes a step in progress still needs (see successor), which aren't thrown away
+	private int workingSize;
+	private Node root; // whole plane, centred on (0, 0)
+	private long generation;
+
+	// Constructor that copies a colony, keeping the memory use to about a quarter of the heap
+	public HashLife (Colony colony)
+	{
+		this (colony, Runtime.getRuntime ().maxMemory () / 4);
+	}
+
+	// Constructor that copies a colony (column is x, row is y); maxBytes limits the memory used by nodes
+	public HashLife (Colony colony, long maxBytes)
+	{
+		maxNodes = collectAt = Math.max (1 << 16, maxBytes / NODE_BYTES);
+
+		// Make the root big enough to hold the colony in its bottom right quarter
+		int level = 3;
+		while ((1L << (level - 1)) < Math.max (colony.getRows (), colony.getColumns ()))
+			level++;
+		root = join (empty (level - 1), empty (level - 1), empty (level - 1), build (colony, level - 1, 0, 0));
+	}
+
+	// Getter method for the number of generations advanced so far
+	public long getGeneration ()
+	{
+		return generation;
+	}
+
+	// Returns number of cells in the whole plane
+	public long getPopulation ()
+	{
+		return root.population;
+	}
+
+	// Getter method for the number of nodes currently stored
+	public int getNodeCount ()
+	{
+		return size;
+	}
+
+	// Advance 2^k generations (k is at most MAX_STEP)
+	public void step (int k)
+	{
+		if (k < 0 || k > MAX_STEP)
+			throw new IllegalArgumentException ("Can't step 2^" + k + " generations");
+		collectIfFull ();
+
+		// Pad the root with empty space until the pattern can't grow out of the result in 2^k generations
+		while (root.level < k + 3 || center (center (root)).population != root.population)
+		{
+			if (root.level == MAX_LEVEL)
+				throw new IllegalStateException ("The pattern has grown too big for the plane");
+			root = expand (root);
+		}
+		root = successor (root, k);
+		generation += 1L << k;
+	}
+
+	// Advance any number of generations, one power of two at a time (the biggest as several steps of 2^MAX_STEP)
+	public void advance (long generations)
+	{
+		for (int k = 62; k >= 0; k--)
+			if ((generations & (1L << k)) != 0)
+				for (long i = 0; i < 1L << Math.max (0, k - MAX_STEP); i++)
+					step (Math.min (k, MAX_STEP));
+	}
+
+	// Copy the plane back into a colony (column is x, row is y). Cells outside the colony are left out
+	public void writeTo (Colony colony)
+	{
+		colony.clear ();
+		long half = 1L << (root.level - 1);
+		write (colony, root, -half, -half);
+	}
+
+	// Copy the cells of one square into a colony, with the square's top left corner at (x, y)
+	private void write (Colony colony, Node node, long x, long y)
+	{
+		long width = 1L << node.level;
+		if (node.population == 0 || x >= colony.getColumns () || y >= colony.getRows () || x + width <= 0 || y + width <= 0)
+			return; // nothing to copy
+		if (node.level == 0)
+			colony.setCell ((int) y, (int) x, true);
+		else
+		{
+			long half = width / 2;
+			write (colony, node.nw, x, y);
+			write (colony, node.ne, x + half, y);
+			write (colony, node.sw, x, y + half);
+			write (colony, node.se, x + half, y + half);
+		}
+	}
+
+	// Make the square of a colony 2^level wide with its top left corner at (x, y)
+	private Node build (Colony colony, int level, int x, int y)
+	{
+		if (x >= colony.getColumns () || y >= colony.getRows ())
+			return empty (level);
+		if (level == 0)
+			return colony.isAlive (y, x) ? ALIVE : DEAD;
+		int half = 1 << (level - 1);
+		return join (build (colony, level - 1, x, y), build (colony, level - 1, x + half, y),
+				build (colony, level - 1, x, y + half), build (colony, level - 1, x + half, y + half));
+	}
+
+	// Returns the one node made of these four quarters, making it if it doesn't exist yet
+	private Node join (Node nw, Node ne, Node sw, Node se)
+	{
+		int hash = ((nw.hash * 31 + ne.hash) * 31 + sw.hash) * 31 + se.hash;
+		hash ^= hash >>> 16; // spread the bits for the table index
+		int index = hash & (table.length - 1);
+		for (Node node = table [index]; node != null; node = node.chain)
+			if (node.nw == nw && node.ne == ne && node.sw == sw && node.se == se) // already made
+				return node;
+
+		Node node = new Node (nw, ne, sw, se, hash);
+		insert (node);
+		if (size > table.length * 3 / 4) // table is getting full
+			resize (table.length * 2);
+		return node;
+	}
+
+	// Put a node into the hash table
+	private void insert (Node node)
+	{
+		int index = node.hash & (table.length - 1);
+		node.chain = table [index];
+		table [index] = node;
+		size++;
+	}
+
+	// Move every node into a hash table of a new size
+	private void resize (int length)
+	{
+		Node[] old = table;
+		table = new Node [length];
+		size = 0;
+		for (int i = 0; i < old.length; i++)
+			for (Node node = old [i], chain; node != null; node = chain)
+			{
+				chain = node.chain;
+				insert (node);
+			}
+	}
+
+	// If there are too many nodes, throw away every one that isn't part of the current plane, still needed by the
+	// step in progress, or a remembered future of one of those. If that doesn't free half the limit, throw away the
+	// remembered futures too. If most of the nodes are in use, it waits until there are twice as many before trying
+	// again, so it doesn't keep collecting to little effect
+	private void collectIfFull ()
+	{
+		if (size <= collectAt)
+			return;
+		collect (true);
+		if (size > maxNodes / 2)
+			collect (false);
+		collectAt = Math.max (maxNodes, 2L * size);
+	}
+
+	// Put only the nodes in use back into the hash table, with or without their remembered futures
+	private void collect (boolean futures)
+	{
+		table = new Node [table.length];
+		size = 0;
+		keep (root, futures);
+		for (int i = 1; i < empty.length; i++)
+			if (empty [i] != null)
+				keep (empty [i], futures);
+		for (int i = 0; i < workingSize; i++)
+			keep (working [i], futures);
+	}
+
+	// Keep a node from being thrown away until the step that needs it is done (see successor)
+	private void hold (Node node)
+	{
+		if (workingSize == working.length)
+			working = Arrays.copyOf (working, workingSize * 2);
+		working [workingSize++] = node;
+	}
+
+	// Put a node and everything in it back into the hash table, and its remembered future (or forget it)
+	private void keep (Node node, boolean future)
+	{
+		if (node.level == 0)
+			return;
+		for (Node other = table [node.hash & (table.length - 1)]; other != null; other = other.chain)
+			if (other == node) // already kept (squares are shared, so it can be reached more than once)
+				return;
+		keep (node.nw, future);
+		keep (node.ne, future);
+		keep (node.sw, future);
+		keep (node.se, future);
+		if (!future)
+			node.result = null;
+		else if (node.result != null)
+			keep (node.result, future);
+		insert (node);
+	}
+
+	// Returns the empty square 2^level wide
+	private Node empty (int level)
+	{
+		if (level == 0)
+			return DEAD;
+		if (empty [level] == null)
+		{
+			Node quarter = empty (level - 1);
+			empty [level] = join (quarter, quarter, quarter, quarter);
+		}
+		return empty [level];
+	}
+
+	// Returns a square twice as wide with this one in the middle
+	private Node expand (Node node)
+	{
+		Node border = empty (node.level - 1);
+		return join (join (border, border, border, node.nw), join (border, border, node.ne, border),
+				join (border, node.sw, border, border), join (node.se, border, border, border));
+	}
+
+	// Returns the middle half of a square
+	private Node center (Node node)
+	{
+		return join (node.nw.se, node.ne.sw, node.sw.ne, node.se.nw);
+	}
+
+	// Returns the square halfway between two squares side by side
+	private Node centerHorizontal (Node w, Node e)
+	{
+		return join (w.ne, e.nw, w.se, e.sw);
+	}
+
+	// Returns the square halfway between two squares one above the other
+	private Node centerVertical (Node n, Node s)
+	{
+		return join (n.sw, n.se, s.nw, s.ne);
+	}
+
+	// Returns the middle half of a square 2^j generations later (j is at most level - 2)
+	private Node successor (Node node, int j)
+	{
+		if (node.population == 0)
+			return empty (node.level - 1);
+		if (node.result != null && node.resultStep == j) // already worked out
+			return node.result;
+
+		Node result;
+		if (node.level == 2)
+			result = step4 (node);
+		else
+		{
+			// Nodes can be thrown away between levels (see collectIfFull), so hold on to the ones made here until
+			// they have been used
+			int held = workingSize;
+			hold (node);
+			collectIfFull ();
+
+			// Nine overlapping squares half as wide
+			Node n00 = node.nw, n01 = centerHorizontal (node.nw, node.ne), n02 = node.ne;
+			hold (n01);
+			Node n10 = centerVertical (node.nw, node.sw), n11 = center (node), n12 = centerVertical (node.ne, node.se);
+			hold (n10); hold (n11); hold (n12);
+			Node n20 = node.sw, n21 = centerHorizontal (node.sw, node.se), n22 = node.se;
+			hold (n21);
+
+			int second = j; // advance the squares made of the nine this many generations (as a power of two)
+			if (j == node.level - 2) // full step: advance 2^(j - 1) generations twice
+			{
+				second = j - 1;
+				n00 = successor (n00, j - 1); hold (n00); n01 = successor (n01, j - 1); hold (n01); n02 = successor (n02, j - 1); hold (n02);
+				n10 = successor (n10, j - 1); hold (n10); n11 = successor (n11, j - 1); hold (n11); n12 = successor (n12, j - 1); hold (n12);
+				n20 = successor (n20, j - 1); hold (n20); n21 = successor (n21, j - 1); hold (n21); n22 = successor (n22, j - 1); hold (n22);
+			}
+			else // shorter step: take the middle of each square, then advance 2^j generations once
+			{
+				n00 = center (n00); n01 = center (n01); n02 = center (n02);
+				n10 = center (n10); n11 = center (n11); n12 = center (n12);
+				n20 = center (n20); n21 = center (n21); n22 = center (n22);
+				hold (n00); hold (n01); hold (n02); hold (n10); hold (n11); hold (n12); hold (n20); hold (n21); hold (n22);
+			}
+			Node nw = successor (join (n00, n01, n10, n11), second);
+			hold (nw);
+			Node ne = successor (join (n01, n02, n11, n12), second);
+			hold (ne);
+			Node sw = successor (join (n10, n11, n20, n21), second);
+			hold (sw);
+			result = join (nw, ne, sw, successor (join (n11, n12, n21, n22), second));
+			workingSize = held;
+		}
+
+		node.result = result;
+		node.resultStep = j;
+		return result;
+	}
+
+	// Returns the middle 2 * 2 of a 4 * 4 square one generation later
+	private Node step4 (Node node)
+	{
+		// Bit (y * 4 + x) is the cell at (x, y)
+		int bits = 0;
+		Node[] quarters = {node.nw, node.ne, node.sw, node.se};
+		for (int q = 0; q < 4; q++)
+		{
+			int shift = (q & 1) * 2 + (q >> 1) * 8; // top left corner of the quarter
+			bits |= (int) quarters [q].nw.population << shift | (int) quarters [q].ne.population << (shift + 1)
+					| (int) quarters [q].sw.population << (shift + 4) | (int) quarters [q].se.population << (shift + 5);
+		}
+		return join (live (bits, 1, 1), live (bits, 2, 1), live (bits, 1, 2), live (bits, 2, 2));
+	}
+
+	// Determine if the cell at (x, y) of a 4 * 4 square lives in the next generation
+	private static Node live (int bits, int x, int y)
+	{
+		int counter = 0; // Counter for number of neighbours
+		for (int i = y - 1; i <= y + 1; i++)
+			for (int j = x - 1; j <= x + 1; j++)
+				if ((i != y || j != x) && (bits & (1 << (i * 4 + j))) != 0)
+					counter++;
+		boolean alive = (bits & (1 << (y * 4 + x))) != 0;
+		return counter == 3 || (alive && counter == 2) ? ALIVE : DEAD;
+	}
+}
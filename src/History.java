@@ -0,0 +1,259 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Remembers past generations of a colony so it can be stepped back, or taken back to any generation still
+// remembered and carried on from there (a new branch, which forgets the generations that came after it).
+// Each generation is stored as the words of cells that are different from two generations before: blinkers and
+// the other period 2 oscillators that most colonies settle into then don't need storing at all. Changes are XORed,
+// so the same change takes the cells forwards or backwards. Every so often a pair of generations is copied whole (a
+// keyframe), so no generation is far from a starting point. The oldest generations are forgotten to stay within a
+// memory limit
+public class History
+{
+	// One remembered state of the colony
+	private static final class Frame
+	{
+		final long generation;
+		final int[] index; // words that are different from two frames before (row * words + w; null if most of them are)
+		final long[] bits; // bits of those words that are different (of every word, if index is null)
+		long[] keyframe, before; // all the cells, and all the cells of the frame before (null for most frames)
+
+		// Constructor
+		Frame (long generation, int[] index, long[] bits)
+		{
+			this.generation = generation;
+			this.index = index;
+			this.bits = bits;
+		}
+
+		// Rough number of bytes used
+		long bytes ()
+		{
+			long bytes = 64 + (index == null ? 0 : index.length * 4L) + bits.length * 8L;
+			if (keyframe != null)
+				bytes += keyframe.length * 8L;
+			if (before != null && before != keyframe)
+				bytes += before.length * 8L;
+			return bytes;
+		}
+	}
+
+	private static final int MAX_KEYFRAME_GAP = 256; // most frames between keyframes (the most that are replayed)
+	private static final int KEYFRAME_SPACING = 8; // changes worth this many copies of the cells are stored between keyframes
+
+	private final long maxBytes;
+	private long bytes; // memory used by the frames
+	private final List<Frame> frames = new ArrayList<Frame> (); // oldest first
+	private int position = -1; // frame the colony is at
+	private int rows, words; // size of the colony being remembered
+	private long[] copy, previous; // the cells at position and the frame before it (the same as copy for the first frame)
+	private long sinceKeyframe; // bytes of changes stored since the last keyframe
+	private int[] changedIndex = new int [1024]; // room for working out the changes of each generation
+	private long[] changedBits = new long [1024];
+
+	// Constructor; maxBytes limits the memory used
+	public History (long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+	}
+
+	// Forget everything
+	public void clear ()
+	{
+		frames.clear ();
+		bytes = 0;
+		position = -1;
+		copy = null;
+		previous = null;
+	}
+
+	// Getter methods for the generation the colony is at, and the oldest and newest generations remembered
+	// (-1 if nothing is remembered)
+	public long getGeneration ()
+	{
+		return position < 0 ? -1 : frames.get (position).generation;
+	}
+
+	public long getOldest ()
+	{
+		return frames.isEmpty () ? -1 : frames.get (0).generation;
+	}
+
+	public long getNewest ()
+	{
+		return frames.isEmpty () ? -1 : frames.get (frames.size () - 1).generation;
+	}
+
+	// Getter method for the memory used
+	public long getBytes ()
+	{
+		return bytes;
+	}
+
+	// Remember a colony as it is at a generation (after it advances or is edited). If the colony had been taken back
+	// to an earlier generation, the generations after it are forgotten
+	public void record (Colony colony, long generation)
+	{
+		if (copy == null || colony.getRows () != rows || colony.getWords () != words) // new colony; start again
+		{
+			clear ();
+			rows = colony.getRows ();
+			words = colony.getWords ();
+			copy = new long [rows * words];
+			for (int row = 0, i = 0; row < rows; row++)
+				for (int w = 0; w < words; w++, i++)
+					copy [i] = colony.getWord (row, w);
+			previous = copy.clone ();
+			Frame first = new Frame (generation, new int [0], new long [0]);
+			first.keyframe = copy.clone ();
+			first.before = first.keyframe;
+			add (first);
+			sinceKeyframe = 0;
+			return;
+		}
+		while (frames.size () > position + 1) // start a new branch
+			bytes -= frames.remove (frames.size () - 1).bytes ();
+
+		// Find the words that are different from two frames before, and move the copies along a frame
+		int count = 0;
+		for (int row = 0, i = 0; row < rows; row++)
+			for (int w = 0; w < words; w++, i++)
+			{
+				long word = colony.getWord (row, w);
+				if (word != previous [i])
+				{
+					if (count == changedIndex.length) // out of room; double the space
+					{
+						changedIndex = Arrays.copyOf (changedIndex, count * 2);
+						changedBits = Arrays.copyOf (changedBits, count * 2);
+					}
+					changedIndex [count] = i;
+					changedBits [count++] = word ^ previous [i];
+					previous [i] = word;
+				}
+			}
+		long[] swap = previous;
+		previous = copy;
+		copy = swap;
+
+		Frame frame;
+		if (count * 3L > copy.length * 2L) // most words are different; cheaper to store the changes to all of them
+		{
+			long[] bits = new long [copy.length];
+			for (int i = 0; i < count; i++)
+				bits [changedIndex [i]] = changedBits [i];
+			frame = new Frame (generation, null, bits);
+		}
+		else
+			frame = new Frame (generation, Arrays.copyOf (changedIndex, count), Arrays.copyOf (changedBits, count));
+		sinceKeyframe += frame.bytes ();
+		if (sinceKeyframe >= copy.length * 8L * KEYFRAME_SPACING || frames.size () - lastKeyframe (frames.size () - 1) >= MAX_KEYFRAME_GAP)
+		{
+			frame.keyframe = copy.clone ();
+			frame.before = previous.clone ();
+			sinceKeyframe = 0;
+		}
+		add (frame);
+
+		// Forget the oldest generations while over the limit (but always keep the newest)
+		while (bytes > maxBytes && frames.size () > 1)
+			forgetOldest ();
+	}
+
+	// Take a colony back a generation (or back before its last edit); returns false if there is nothing to go back to
+	public boolean back (Colony colony)
+	{
+		if (position < 1)
+			return false;
+		moveTo (position - 1, colony);
+		return true;
+	}
+
+	// Take a colony to a remembered generation (the latest state of it, if it was edited); returns false if the
+	// generation isn't remembered
+	public boolean scrub (long generation, Colony colony)
+	{
+		for (int i = frames.size () - 1; i >= 0; i--)
+			if (frames.get (i).generation == generation)
+			{
+				moveTo (i, colony);
+				return true;
+			}
+		return false;
+	}
+
+	// Add a frame as the newest one, with the colony at it
+	private void add (Frame frame)
+	{
+		frames.add (frame);
+		bytes += frame.bytes ();
+		position = frames.size () - 1;
+	}
+
+	// Move to a frame, changing the colony's cells to match it
+	private void moveTo (int target, Colony colony)
+	{
+		int keyframe = lastKeyframe (target);
+		if (target - keyframe < Math.abs (target - position)) // quicker to start from the keyframe
+		{
+			Frame start = frames.get (keyframe);
+			System.arraycopy (start.keyframe, 0, copy, 0, copy.length);
+			System.arraycopy (start.before, 0, previous, 0, previous.length);
+			position = keyframe;
+		}
+		for (; position > target; position--) // two frames before is this frame XOR its changes
+		{
+			xor (frames.get (position), copy);
+			long[] swap = previous;
+			previous = copy;
+			copy = swap;
+		}
+		for (; position < target; position++) // and the frame after is the frame before XOR its changes
+		{
+			xor (frames.get (position + 1), previous);
+			long[] swap = previous;
+			previous = copy;
+			copy = swap;
+		}
+
+		for (int row = 0, i = 0; row < rows; row++)
+			for (int w = 0; w < words; w++, i++)
+				colony.setWord (row, w, copy [i]); // only words that are different actually change
+	}
+
+	// XOR a frame's changes into some cells
+	private static void xor (Frame frame, long[] cells)
+	{
+		if (frame.index == null)
+			for (int i = 0; i < cells.length; i++)
+				cells [i] ^= frame.bits [i];
+		else
+			for (int i = 0; i < frame.index.length; i++)
+				cells [frame.index [i]] ^= frame.bits [i];
+	}
+
+	// Returns the last frame at or before a frame that is a keyframe
+	private int lastKeyframe (int frame)
+	{
+		while (frames.get (frame).keyframe == null)
+			frame--;
+		return frame;
+	}
+
+	// Forget the oldest frame, making the one after it a keyframe if it isn't one already
+	private void forgetOldest ()
+	{
+		Frame oldest = frames.remove (0), first = frames.get (0);
+		bytes -= oldest.bytes () + first.bytes ();
+		if (first.keyframe == null) // work its cells out from the frame before the oldest one, reusing its copy
+		{
+			long[] cells = oldest.before == oldest.keyframe ? oldest.keyframe.clone () : oldest.before;
+			xor (first, cells);
+			first.keyframe = cells;
+			first.before = oldest.keyframe;
+		}
+		bytes += first.bytes ();
+		position--;
+	}
+}
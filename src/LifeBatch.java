@@ -0,0 +1,267 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// Runs a colony from a file for a number of generations without a window, as fast as possible, and prints the
+// population and how fast it ran. Used for servers with no display and for scripting batches of runs:
+//
+//   java LifeBatch [-engine colony|table|unbounded|hashlife|sharded] [-threads n] [-shards n] [-workers host:port,...] [-size rows x columns] [-rule rulestring] [-topology dead|torus|klein|cylinder] [-every n] [-stop] file generations
+//
+// The table engine steps a bounded colony by looking up 2 * 2 blocks of cells in a table (see TableColony). The
+// sharded engine splits the colony into bands of rows stepped by worker processes (see ShardDriver): -shards of
+// them started on this machine, sharing out the threads, or the ShardWorkers already running at -workers. The
+// colony, table, unbounded and sharded engines also report if the colony settles into a still life or starts
+// repeating itself, and with -stop they end the run there, since nothing new can happen after that. They also time
+// every generation (see Metrics), which JMX clients can watch during the run and which is summed up at the end
+public class LifeBatch
+{
+	// Main method
+	public static void main (String[] args)
+	{
+		String engine = "colony", fileName = null;
+		int threads = Runtime.getRuntime ().availableProcessors ();
+		int shards = 2; // worker processes to start for the sharded engine
+		List<InetSocketAddress> workers = null; // workers already running to use instead
+		int rows = 0, columns = 0; // size of colony in the file (0 to treat the file as a square)
+		long generations = -1, every = 0;
+		boolean stop = false; // stop once the colony repeats itself
+		Rule rule = null; // rule to follow instead of the file's
+		Topology topology = Topology.DEAD; // what is past the edges of the colony
+
+		// Read command line arguments
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args [i].equals ("-engine"))
+					engine = args [++i];
+				else if (args [i].equals ("-threads"))
+					threads = Integer.parseInt (args [++i]);
+				else if (args [i].equals ("-shards"))
+					shards = Integer.parseInt (args [++i]);
+				else if (args [i].equals ("-workers"))
+				{
+					workers = new ArrayList<InetSocketAddress> ();
+					for (String worker : args [++i].split (","))
+					{
+						int colon = worker.lastIndexOf (':');
+						workers.add (new InetSocketAddress (worker.substring (0, colon).trim (), Integer.parseInt (worker.substring (colon + 1).trim ())));
+					}
+				}
+				else if (args [i].equals ("-size"))
+				{
+					String[] parts = args [++i].toLowerCase ().split ("x");
+					rows = Integer.parseInt (parts [0].trim ());
+					columns = Integer.parseInt (parts [parts.length - 1].trim ());
+				}
+				else if (args [i].equals ("-rule"))
+					rule = Rule.parse (args [++i]);
+				else if (args [i].equals ("-topology"))
+					topology = Topology.parse (args [++i]);
+				else if (args [i].equals ("-every"))
+					every = Long.parseLong (args [++i]);
+				else if (args [i].equals ("-stop"))
+					stop = true;
+				else if (fileName == null)
+					fileName = args [i];
+				else
+					generations = Long.parseLong (args [i]);
+			}
+		}
+		catch (RuntimeException e) // missing or badly formed number or rule
+		{
+			fileName = null;
+		}
+		if (fileName == null || generations < 0 || threads < 1 || shards < 1 || !(engine.equals ("colony") || engine.equals ("table") || engine.equals ("unbounded") || engine.equals ("hashlife") || engine.equals ("sharded")))
+		{
+			System.err.println ("Usage: LifeBatch [-engine colony|table|unbounded|hashlife|sharded] [-threads n] [-shards n] [-workers host:port,...] [-size rows x columns] [-rule rulestring] [-topology dead|torus|klein|cylinder] [-every n] [-stop] file generations");
+			System.exit (1);
+		}
+
+		// Load colony (the sharded engine hands the rows out to its workers as it reads them, so it never holds them all)
+		Colony colony = null;
+		ShardDriver driver = null;
+		try
+		{
+			if (engine.equals ("sharded"))
+			{
+				ColonyFile.RowReader cells = ColonyFile.openRows (new File (fileName), rows, columns);
+				if (cells != null)
+				{
+					try
+					{
+						Rule followed = rule != null ? rule : cells.getRule ();
+						driver = workers != null ? new ShardDriver (cells, followed, topology, workers)
+								: new ShardDriver (cells, followed, topology, shards, Math.max (1, threads / shards));
+					}
+					finally
+					{
+						cells.close ();
+					}
+				}
+			}
+			else
+				colony = ColonyFile.load (new File (fileName), rows, columns, 0);
+		}
+		catch (FileNotFoundException e)
+		{
+			System.err.println ("Can't find " + fileName);
+			System.exit (1);
+		}
+		catch (IOException e) // bad row in the file, or lost a worker
+		{
+			System.err.println ("Can't load " + fileName + " into the shards: " + e.getMessage ());
+			System.exit (1);
+		}
+		if (colony == null && driver == null)
+		{
+			System.err.println (fileName + " is not a legal colony file");
+			System.exit (1);
+		}
+		if (colony != null)
+		{
+			if (rule != null)
+				colony.setRule (rule);
+			colony.setTopology (topology);
+		}
+		if (topology != Topology.DEAD && !engine.equals ("colony") && !engine.equals ("sharded"))
+		{
+			System.err.println ("Only the colony and sharded engines have edges to wrap round");
+			System.exit (1);
+		}
+		if (engine.equals ("hashlife") && !colony.getRule ().isLife ())
+		{
+			System.err.println ("HashLife only follows B3/S23");
+			System.exit (1);
+		}
+		if (driver != null)
+			System.out.println ("Loaded " + fileName + ": " + driver.getRows () + " x " + driver.getColumns () + ", " + driver.getCellNum () + " cells, rule " + driver.getRule () + ", " + topology + ", split into " + driver.getShards () + " shards");
+		else
+			System.out.println ("Loaded " + fileName + ": " + colony.getRows () + " x " + colony.getColumns () + ", " + colony.getCellNum () + " cells, rule " + colony.getRule () + ", " + topology);
+		if (engine.equals ("colony"))
+			System.out.println (Colony.getLanes () > 1 ? "Stepping " + Colony.getLanes () + " words at once with the Vector API" : "Stepping one word at a time");
+
+		// Run
+		long start = System.nanoTime ();
+		long population;
+		CycleDetector cycles = new CycleDetector ();
+		Metrics metrics = new Metrics ();
+		if (engine.equals ("hashlife"))
+		{
+			HashLife life = new HashLife (colony);
+			try
+			{
+				for (long done = 0; done < generations; )
+				{
+					long n = every > 0 ? Math.min (every, generations - done) : generations - done;
+					life.advance (n);
+					done += n;
+					if (every > 0)
+						System.out.println ("Generation " + done + ": " + life.getPopulation () + " cells");
+				}
+			}
+			catch (IllegalStateException e) // grew past the edges of the plane
+			{
+				System.err.println (e.getMessage () + " after " + life.getGeneration () + " generations");
+				System.exit (1);
+			}
+			population = life.getPopulation ();
+		}
+		else if (driver != null)
+		{
+			try
+			{
+				cycles.add (driver.getHash (), driver.getCellNum (), 0);
+				metrics.register ();
+				long cells = (long) driver.getRows () * driver.getColumns ();
+				for (long done = 1; done <= generations; done++)
+				{
+					metrics.stepping ();
+					long stepStart = System.nanoTime ();
+					driver.advance ();
+					metrics.stepped (done, System.nanoTime () - stepStart, cells, 0);
+					if (every > 0 && done % every == 0)
+						System.out.println ("Generation " + done + ": " + driver.getCellNum () + " cells");
+					if (cycles.add (driver.getHash (), driver.getCellNum (), done) && stop)
+					{
+						generations = done;
+						break;
+					}
+				}
+				population = driver.getCellNum ();
+				System.out.print (driver.report ());
+			}
+			catch (IOException e)
+			{
+				System.err.println ("Lost a worker: " + e.getMessage ());
+				System.exit (1);
+				return;
+			}
+			finally
+			{
+				driver.close ();
+			}
+		}
+		else
+		{
+			Board board = colony;
+			if (engine.equals ("unbounded") || engine.equals ("table"))
+			{
+				board = engine.equals ("table") ? new TableColony (colony.getRows (), colony.getColumns (), 0, 0)
+						: new SparseColony (colony.getRows (), colony.getColumns (), 0, 0);
+				board.place (colony, 0, 0);
+				try
+				{
+					board.setRule (colony.getRule ());
+				}
+				catch (IllegalArgumentException e)
+				{
+					System.err.println (e.getMessage ());
+					System.exit (1);
+				}
+			}
+			else if (threads > 1)
+				colony.setExecutor (new ForkJoinPool (threads), threads * 4); // a few bands per thread so they finish together
+
+			cycles.add (board, 0);
+			metrics.register ();
+			long cells = (long) board.getRows () * board.getColumns ();
+			for (long done = 1; done <= generations; done++)
+			{
+				metrics.stepping ();
+				long stepStart = System.nanoTime (), allocated = Metrics.allocated ();
+				board.advance ();
+				metrics.stepped (done, System.nanoTime () - stepStart, cells, Metrics.allocated () - allocated);
+				if (every > 0 && done % every == 0)
+					System.out.println ("Generation " + done + ": " + board.getCellNum () + " cells");
+				if (cycles.add (board, done) && stop) // repeating; the rest of the run is already known
+				{
+					generations = done;
+					break;
+				}
+			}
+			population = board.getCellNum ();
+		}
+		double seconds = (System.nanoTime () - start) / 1e9;
+
+		// Report
+		System.out.println ("Generations: " + generations);
+		System.out.println ("Population: " + population);
+		if (cycles.found ())
+			System.out.println (cycles.getPeriod () == 1 ? "Still life from generation " + cycles.getOnset ()
+					: "Repeats every " + cycles.getPeriod () + " generations from generation " + cycles.getOnset ());
+		System.out.printf ("Time: %.3f s%n", seconds);
+		System.out.printf ("Generations/s: %.1f%n", generations / seconds);
+		if (engine.equals ("colony"))
+			System.out.printf ("Cell updates/s: %.3g%n", (double) colony.getRows () * colony.getColumns () * generations / seconds);
+		else if (driver != null)
+			System.out.printf ("Cell updates/s: %.3g%n", (double) driver.getRows () * driver.getColumns () * generations / seconds);
+		if (metrics.getGenerations () > 0)
+			System.out.printf ("Step time: mean %.4f ms, median %.4f ms, 90%% %.4f ms, 99%% %.4f ms, longest %.4f ms%n",
+					metrics.getStepMillisMean (), metrics.getStepMillisP50 (), metrics.getStepMillisP90 (), metrics.getStepMillisP99 (), metrics.getStepMillisMax ());
+	}
+}
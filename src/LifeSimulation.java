@@ -20,23 +20,23 @@ import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Graphics;
 import java.awt.GridLayout;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.imageio.ImageIO;
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -44,8 +44,9 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSlider;
+import javax.swing.JTextField;
 import javax.swing.JToolBar;
-import javax.swing.Timer;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.border.Border;
@@ -56,24 +57,35 @@ import javax.swing.filechooser.FileFilter;
 
 public class LifeSimulation extends JFrame implements ActionListener, ChangeListener
 {   
+	private ForkJoinPool stepper = new ForkJoinPool (); // threads that advance the colony (one per processor)
+	private Simulation simulation = new Simulation (500); // advances the colony on its own thread
 	private ColonyPanel cPanel = new ColonyPanel (0.6);
-	private Timer timer = new Timer (500, this); 
+	private JButton backBtn = new JButton ("Back");
 	private JButton advanceBtn = new JButton ("Advance");
 	private JButton playBtn = new JButton ("Play");
 	private JButton pauseBtn = new JButton ("Pause");
 	private JButton loadBtn = new JButton ("Load File");
 	private JButton saveBtn = new JButton ("Save File");
+	private JButton newBtn = new JButton ("New Colony");
+	private JButton ruleBtn = new JButton ("Rule");
+	private JButton patternsBtn = new JButton ("Patterns");
+	private PatternLibrary patterns = new PatternLibrary (16); // stencils (and the user's patterns), read once
 	private JSlider genSpeed = new JSlider (100, 900, 500);
+	private JCheckBox maxSpeed = new JCheckBox ("Max speed (as fast as possible)");
+	private JCheckBox stopOnCycle = new JCheckBox ("Stop once the colony repeats itself");
 	private JButton credit = new JButton ("Click me");
-	private JSlider zoom = new JSlider (5, 100, 7);
+	private JSlider zoom = new JSlider (-6, 100, 7); // pixels per cell (0 and below zoom out further: see ColonyPanel.setZoom)
 	private JSlider popErad = new JSlider (0, 100, 85);
+	private JSlider history = new JSlider (0, 0, 0); // generations that can be gone back to
+	private boolean showingHistory = false; // history slider is being moved to match the colony, not by the user
 	private JPanel scrollCPanePanel = new JPanel ();
 	private JScrollPane scrollCPane = new JScrollPane();
 	private JButton[][] toolsButtons = new JButton [3][3];
-	private CV CVPanel = new CV (cPanel.getColony().getGrid());
+	private DensityPyramid pyramid = new DensityPyramid (); // cells in blocks of the colony, for drawing it zoomed out
+	private CV CVPanel = new CV (simulation, pyramid);
 	private boolean startedFree = false, startedErad = false, startedPop = false;
-	private int genNum = 0, cellNum = cPanel.getColony().getCellNum();
-	private JLabel stats;
+	private int cellNum;
+	private JLabel stats, metrics; // what the colony is doing, and how fast it's running
 	private JToolBar topTBar = new JToolBar ();
 	private JPanel panelWithToolbar = new JPanel ();
     private JToolBar bottomTBar = new JToolBar ();
@@ -91,17 +103,45 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
 		this.getContentPane().setLayout(new BorderLayout());  
 		
 		// Add action listeners to buttons
+		backBtn.addActionListener(this);
 		advanceBtn.addActionListener(this);	
 		playBtn.addActionListener(this);	
 		pauseBtn.addActionListener(this);
 		loadBtn.addActionListener(this);
 		saveBtn.addActionListener(this);
+		newBtn.addActionListener(this);
+		ruleBtn.addActionListener(this);
+		patternsBtn.addActionListener(this);
 		credit.addActionListener(this);
+		maxSpeed.addActionListener(this);
+		stopOnCycle.addActionListener(this);
+		
+		// Draw each new generation as the simulation thread finishes it
+		simulation.setListener (new Runnable () {
+			public void run() {
+				SwingUtilities.invokeLater (new Runnable () {
+					public void run() {
+						updateCmpt(); // update current view box and JLabel
+						cPanel.repaint(); // (only the part showing in the scroll pane gets drawn)
+					}
+				});
+			}
+		});
+	    
+		// Add the user's pattern folders (named in the life.patterns property, separated like a classpath)
+		String folders = System.getProperty("life.patterns");
+		if (folders != null)
+			for (String folder : folders.split(File.pathSeparator))
+				if (!folder.isEmpty())
+					patterns.addFolder(new File (folder));
 	    
 		// Set up (top) options toolbar
 		topTBar.setFloatable(false); // disable dragging toolbar off
 		topTBar.add (saveBtn); // add buttons
 		topTBar.add (loadBtn);
+		topTBar.add (newBtn);
+		topTBar.add (ruleBtn);
+		topTBar.add (patternsBtn);
 		topTBar.add (credit);
 		
 		// Tools pane 
@@ -110,6 +150,7 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
 		
 		// Play controls
 		JPanel controls = new JPanel (); 
+		controls.add(backBtn);
 		controls.add(advanceBtn);
 		controls.add(playBtn);
 		controls.add(pauseBtn);
@@ -130,19 +171,27 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
 		
 		genSpeed.addChangeListener (this); // add change listeners (what sliders use) to sliders
 		popErad.addChangeListener(this);
+		history.addChangeListener(this);
 		
 		JPanel genLblPnl = new JPanel (); // JPanels (for formatting) of text in the left toolbox
 		JPanel popEradLblPnl = new JPanel ();
+		JPanel historyLblPnl = new JPanel ();
 		genLblPnl.setLayout (new BorderLayout ());
 		popEradLblPnl.setLayout (new BorderLayout ());
+		historyLblPnl.setLayout (new BorderLayout ());
 		genLblPnl.add(new JLabel ("    Milliseconds per Gen. (update speed)"), BorderLayout.CENTER);
 		popEradLblPnl.add (new JLabel ("    Population/Eradication Success %"), BorderLayout.CENTER);
+		historyLblPnl.add (new JLabel ("    Go back to generation"), BorderLayout.CENTER);
 		
 		settings.add (genLblPnl); // add settings components of toolbox to settings
 		settings.add (genSpeed);
+		settings.add (maxSpeed);
+		settings.add (stopOnCycle);
 		settings.add (popEradLblPnl);
 		settings.add (popErad);
 		settings.add(controls);  
+		settings.add (historyLblPnl);
+		settings.add (history);
 		settings.setBorder(BorderFactory.createEtchedBorder(EtchedBorder.LOWERED)); // add border
 		
 		// Brushes
@@ -193,13 +242,19 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
 	    bottomTBar = new JToolBar (); // bottom toolbar (displays cell/gen # and zoom slider)
 	    // set up toolbar
 		bottomTBar.setFloatable(false); // disable dragging toolbar off
-		bottomTBar.setLayout (new FlowLayout(FlowLayout.RIGHT));
 		bottomTBar.setBorder(BorderFactory.createEtchedBorder(EtchedBorder.LOWERED)); // add border
 		
-		stats = new JLabel ("Cells: " + cellNum + ", Generation: " + genNum); // text for toolbar
-		bottomTBar.add(stats); // add the text
-		bottomTBar.add (new JLabel ("| Zoom")); 
-		bottomTBar.add(zoom); // add zoom slider
+		bottomTBar.setLayout (new BoxLayout (bottomTBar, BoxLayout.Y_AXIS)); // two lines: the colony, and how fast it's running
+		JPanel statsLine = new JPanel (new FlowLayout(FlowLayout.RIGHT)), metricsLine = new JPanel (new FlowLayout(FlowLayout.RIGHT, 5, 0));
+		stats = new JLabel ("Cells: " + cellNum + ", Generation: 0"); // text for toolbar
+		statsLine.add(stats); // add the text
+		statsLine.add (new JLabel ("| Zoom")); 
+		statsLine.add(zoom); // add zoom slider
+		metrics = new JLabel (simulation.getMetrics().toString());
+		metricsLine.add(metrics);
+		bottomTBar.add(statsLine);
+		bottomTBar.add(metricsLine);
+		simulation.getMetrics().register(); // let JMX clients (such as jconsole) watch it too
 		
 		panelWithToolbar.setLayout (new BorderLayout ()); // add things to the panel that includes the toolbar
 		panelWithToolbar.add(scrollCPanePanel, BorderLayout.CENTER);
@@ -214,9 +269,27 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
 	// Update screen (used to update current view box and jlabels in the stats bar)
 	public void updateCmpt ()
 	{
-		CVPanel.setGrid (cPanel.getColony().getGrid()); // update colony/grid in current view box
-		cellNum = cPanel.getColony().getCellNum(); // get updated number of cells for stats bar
-		stats.setText("Cells: " + cellNum + " | Generation: " + genNum); // update the stats bar
+		Snapshot colony = simulation.latest(); // newest generation the simulation thread has finished
+		cellNum = colony.population; // get updated number of cells for stats bar (counted as the colony changes)
+		String repeats = ""; // say if the colony has settled down
+		if (colony.period == 1)
+			repeats = " | Still since generation " + colony.onset;
+		else if (colony.period > 1)
+			repeats = " | Repeats every " + colony.period + " generations since generation " + colony.onset;
+		stats.setText("Cells: " + cellNum + " (+" + colony.births + " / -" + colony.deaths + ") | Generation: " + colony.generation + " | Rule: " + colony.rule + repeats); // update the stats bar
+		metrics.setText(simulation.getMetrics().toString());
+		
+		// Show which generations can be gone back to (unless the user is dragging the slider)
+		history.setEnabled(colony.oldest >= 0);
+		if (colony.oldest >= 0 && !history.getValueIsAdjusting())
+		{
+			showingHistory = true;
+			history.setMinimum((int) colony.oldest);
+			history.setMaximum((int) colony.newest);
+			history.setValue((int) colony.generation);
+			showingHistory = false;
+		}
+		backBtn.setEnabled(colony.oldest >= 0 && colony.oldest < colony.newest);
 		
 		// Set buttons enabled if currently being used
 		if (startedPop)
@@ -235,15 +308,17 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
 			toolsButtons[0][2].setEnabled(true);
 		
 		// update
-		revalidate();
-		repaint();
+		CVPanel.repaint();
 	}
 	
 	// Listens to ChangeEvents made by sliders
 	public void stateChanged(ChangeEvent e) {
 		Object origin = e.getSource(); // to check which slider made the ChangeEvent
 		if (origin.equals (genSpeed)) // generation speed slider was moved
-			timer.setDelay (genSpeed.getValue()); // set timer speed
+		{
+			if (!maxSpeed.isSelected())
+				simulation.setDelay (genSpeed.getValue()); // set simulation speed
+		}
 		
 		else if (origin.equals(zoom)) // zoom slider was moved
 		{
@@ -255,77 +330,86 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
 			scrollCPanePanel.repaint();
 		}
 		
+		else if (origin.equals (history) && !showingHistory) // history slider was moved
+		{
+			simulation.scrub(history.getValue()); // go back (or forwards again) to that generation
+		}
+		
 		else if (origin.equals (popErad)) // population/eradication rate slider was moved
 		{
-			Colony temp = cPanel.getColony(); // get colony from cPanel
-			temp.setPopEradRate(popErad.getValue()); // set rate
-			cPanel.setColony (temp); // update colony in cPanel
+			final int rate = popErad.getValue();
+			simulation.edit (new Simulation.Edit () {
+				public void apply(Board colony) {
+					colony.setPopEradRate(rate); // set rate
+				}
+			});
 		}
 	}
 	
-	// Customize file filter to only accept text files
+	// Customize file filter to only accept colony files (RLE files, or text files in the old format)
 	class TxtFilter extends FileFilter
 	{
-		 // Check if file is a text file or directory
+		 // Check if file is a colony file or directory
 		 public boolean accept(File check)  
 		 {  
-		  return check.getName().toLowerCase().endsWith(".txt") || check.isDirectory();  
+		  return check.getName().toLowerCase().endsWith(".rle") || check.getName().toLowerCase().endsWith(".txt") || check.isDirectory();  
 		 }  
 		 
-		 // Set description for text file option
+		 // Set description for colony file option
 		 public String getDescription()  
 		 {  
-		  return ".txt Files";  
+		  return ".rle and .txt Files";  
 		 } 
 	}
 	
 	// Allow user to save files
 	public void save ()
     {
-    	try
-    	{
-    		// Open a JFileChooser dialog to allow user to choose directory to save file
-    		JFileChooser save = new JFileChooser ();
-    		save.setFileFilter(new TxtFilter ()); // Set file filter (which only accepts text files)
-    		int result = save.showSaveDialog (this); // to find out which button was clicked
-    		
-    		if (result == JFileChooser.APPROVE_OPTION) // OK was clicked
+		// Open a JFileChooser dialog to allow user to choose directory to save file
+		JFileChooser save = new JFileChooser ();
+		save.setFileFilter(new TxtFilter ()); // Set file filter (which only accepts colony files)
+		int result = save.showSaveDialog (this); // to find out which button was clicked
+		
+		if (result == JFileChooser.APPROVE_OPTION) // OK was clicked
+		{
+			// check if file had appropiate file name ending; add if not
+			String fileName = save.getSelectedFile().getAbsolutePath(); 
+			if (!fileName.toLowerCase().endsWith(".rle") && !fileName.toLowerCase().endsWith(".txt"))
+					fileName += ".rle";
+			File file = new File (fileName); // get file 
+			
+    		if (file.exists()) // file (or something with the same name) exists in that directory
     		{
-    			// check if file had appropiate file name ending; add if not
-    			String fileName = save.getSelectedFile().getAbsolutePath(); 
-    			if (!fileName.endsWith(".txt"))
-    					fileName += ".txt";
-    			File file = new File (fileName); // get file 
-    			
-	    		if (file.exists()) // file (or something with the same name) exists in that directory
-	    		{
-	    			// ask if user wants to save over
-	    			int event = JOptionPane.showConfirmDialog(null, "The file you are trying to write already exists. Would you like to overwrite the file?", "Error", JOptionPane.YES_NO_OPTION);
-	    			if (event == JOptionPane.YES_OPTION) // yep! 
-	    			{
-		    			String fileContent = cPanel.getColony().toString(); // produce file content
-		    			// write file
-			    		FileWriter fileWriter = new FileWriter (file.getAbsoluteFile());
-			    		BufferedWriter bufferedWriter = new BufferedWriter (fileWriter);
-			    		bufferedWriter.write (fileContent); // write contents of text file
-			    		bufferedWriter.close (); // close buffered writer
-	    			}
-	    		}
-	    		else // file does not already exist in that directory
-	    		{
-	    			String fileContent = cPanel.getColony().toString(); // produce contents of the text file
-		    		FileWriter fileWriter = new FileWriter (file.getAbsoluteFile());
-		    		BufferedWriter bufferedWriter = new BufferedWriter (fileWriter);
-		    		bufferedWriter.write (fileContent); // write contents of text file
-		    		bufferedWriter.close (); // close buffered writer
-	    		}
+    			// ask if user wants to save over
+    			int event = JOptionPane.showConfirmDialog(null, "The file you are trying to write already exists. Would you like to overwrite the file?", "Error", JOptionPane.YES_NO_OPTION);
+    			if (event == JOptionPane.YES_OPTION) // yep! 
+    			{
+	    			saveTo (file.getAbsoluteFile()); // write file
+    			}
     		}
-    	}
-    	catch (IOException e) // catch IOException
-    	{
-    		e.printStackTrace(); // help diagnose problem
-    	}
+    		else // file does not already exist in that directory
+    		{
+    			saveTo (file.getAbsoluteFile()); // write file
+    		}
+		}
     }
+	
+	// Write the colony to a file (on the simulation thread, so it is saved between generations)
+	private void saveTo (final File file)
+	{
+		simulation.edit (new Simulation.Edit () {
+			public void apply(Board colony) {
+		    	try
+		    	{
+		    		ColonyFile.save (colony, file);
+		    	}
+		    	catch (IOException e) // catch IOException
+		    	{
+		    		e.printStackTrace(); // help diagnose problem
+		    	}
+			}
+		});
+	}
     
 	// Allow user to load previously saved files
     public void load ()
@@ -336,32 +420,20 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
 		open.setFileFilter(new TxtFilter ());
 		int result = open.showOpenDialog(this); // find out which button was clicked
 		
-		boolean[][] temp = new boolean [100][100]; // temporary array to store loaded file's colony
-		
 		if (result == JFileChooser.APPROVE_OPTION) // OK was clicked
 		{
 			File file = new File (open.getSelectedFile().getAbsolutePath()); // get file from JFileChooser
 			try 
 			{
-				int counter = 0; // Check if text file is legal
-				Scanner readFile = new Scanner(new FileInputStream (file)); // initialize scanner to read file
-				for (int i = 0;  i < temp.length && readFile.hasNextInt(); i++)
-					for (int j = 0; j < temp[0].length && readFile.hasNextInt(); j++)
-					{
-						if (readFile.nextInt() == 1) // 1s represent true/has cell
-							temp [i][j] = true;
-						else // 0s represent false/no cells
-							temp [i][j] = false;
-						
-						counter++;						
-					}
-				readFile.close(); // close scanner
+				Snapshot current = simulation.latest();
+				Colony temp = ColonyFile.load (file, current.rows, current.columns, popErad.getValue()); // colony stored in the file
 				
 				// Check if file is legal and update
-				if (counter == temp.length * temp[0].length)
+				if (temp != null)
 				{
 					cPanel.setColony(temp); 
 					cPanel.show();
+					scrollCPane.revalidate(); // size of the colony may have changed
 				}
 				else // file is illegal - inform user
 					JOptionPane.showMessageDialog(null, "The file you have selected could be loaded.", "Error", JOptionPane.INFORMATION_MESSAGE);
@@ -370,45 +442,136 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
 			{
 				e.printStackTrace(); // help diagnose problem
 			}	
-		
-			// Set generation number back to 0
-			genNum = 0; 
 		}		
     }
     
-    // Load preset stencils
-    public void loadStencil (int ID)
+    // Put a pattern from the library in the middle of the colony, clearing the colony first if asked; returns false
+    // if there is no such pattern
+    private boolean stamp (String name, final boolean clear)
     {
+    	final Colony pattern = patterns.get(name); // (decoded already if it was used recently)
+    	if (pattern == null)
+    		return false;
+    	simulation.edit (new Simulation.Edit () {
+    		public void apply(Board colony) {
+    			if (clear)
+    				colony.clear();
+    			colony.place (pattern, (colony.getRows() - pattern.getRows()) / 2, (colony.getColumns() - pattern.getColumns()) / 2);
+    		}
+    	});
+    	return true;
+    }
+    
+    // Let the user stamp any pattern in the library into the colony, or add a folder of their own patterns to it
+    public void choosePattern ()
+    {
+    	JComboBox<String> names = new JComboBox<String> (patterns.getNames().toArray(new String [0]));
+    	JCheckBox clear = new JCheckBox ("Clear the colony first", true);
+    	JPanel options = new JPanel (new GridLayout (0, 1));
+    	options.add (new JLabel ("Pattern to put in the middle of the colony:"));
+    	options.add (names);
+    	options.add (clear);
+    	String[] buttons = {"Stamp", "Add Folder...", "Cancel"};
+    	int choice = JOptionPane.showOptionDialog(this, options, "Patterns", JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, buttons, buttons[0]);
+    	
+    	if (choice == 0 && names.getSelectedItem() != null) // Stamp was pressed
+    		stamp ((String) names.getSelectedItem(), clear.isSelected());
+    	else if (choice == 1) // Add Folder was pressed
+    	{
+    		JFileChooser open = new JFileChooser ();
+    		open.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+    		if (open.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+    		{
+    			if (patterns.addFolder(open.getSelectedFile()) == 0)
+    				JOptionPane.showMessageDialog(null, "There are no pattern files (.txt or .rle) in that folder.", "Error", JOptionPane.INFORMATION_MESSAGE);
+    			choosePattern (); // pick from the new patterns
+    		}
+    	}
+    }
+    
+    // Change the rule the colony follows to one typed in by the user
+    public void chooseRule ()
+    {
+    	String text = (String) JOptionPane.showInputDialog(this, "Rule (B3/S23 for Conway's Life, B2/S/C3 for Generations rules,\n"
+    			+ "or R2,C0,M0,S6..9,B7..8,NM for Larger than Life):", "Rule", JOptionPane.PLAIN_MESSAGE, null, null, simulation.latest().rule.toString());
+    	if (text == null) // Cancel was pressed
+    		return;
+    	
     	try
     	{
-    		File file = new File ("./stencils\\" + ID + ".txt"); // load file
-    		System.out.println (this.getClass ().getResource ("/stencils/" + ID + ".txt").toString());
-    		
-    		boolean[][] temp = new boolean [100][100]; // temporary array to hold new colony
+    		final Rule rule = Rule.parse(text);
+    		if (cPanel.isUnbounded())
+    			new SparseColony (1, 1, 0, 0).setRule(rule); // check the endless plane can follow it
+    		simulation.edit (new Simulation.Edit () {
+    			public void apply(Board colony) {
+    				colony.setRule(rule);
+    			}
+    		});
+    	}
+    	catch (IllegalArgumentException e) // not a rule, or not one this colony can follow
+    	{
+    		JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.INFORMATION_MESSAGE);
+    	}
+    }
+    
+    // Replace colony with a new random one of a size chosen by the user
+    public void newColony ()
+    {
+    	Snapshot current = simulation.latest();
+    	
+    	// Ask for the size, and whether cells can carry on past the edges of the board
+    	JTextField size = new JTextField (current.rows + " x " + current.columns);
+    	JCheckBox unbounded = new JCheckBox ("Unbounded (board is a window onto an endless plane)", cPanel.isUnbounded());
+    	JComboBox<Topology> edges = new JComboBox<Topology> (Topology.values());
+    	edges.setSelectedItem(cPanel.getTopology());
+    	JPanel options = new JPanel (new GridLayout (0, 1));
+    	options.add (new JLabel ("Size of the new colony (rows x columns):"));
+    	options.add (size);
+    	options.add (unbounded);
+    	options.add (new JLabel ("Edges of a bounded colony:"));
+    	options.add (edges);
+    	if (JOptionPane.showConfirmDialog(this, options, "New Colony", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) // Cancel was pressed
+    		return;
+    	
+    	try
+    	{
+    		String[] parts = size.getText().toLowerCase().split("x");
+    		int rows = Integer.parseInt(parts[0].trim());
+    		int columns = Integer.parseInt(parts[parts.length - 1].trim());
     		
-    		Scanner readFile = new Scanner(new FileInputStream (file)); // initialize scanner to read file
-			for (int i = 0;  i < temp.length && readFile.hasNextInt(); i++)
-				for (int j = 0; j < temp[0].length && readFile.hasNextInt(); j++)
-				{
-					if (readFile.nextInt() == 1) // 1s represent true/has cell
-						temp [i][j] = true;
-					else // 0s represent false/no cells
-						temp [i][j] = false;
-				}
-			readFile.close(); // close scanner
-			
-			cPanel.setColony(temp); // update colony
+    		Board board = unbounded.isSelected() ? new SparseColony (rows, columns, 0.6, popErad.getValue()) : new Colony (rows, columns, 0.6, popErad.getValue());
+    		board.setRule(current.rule); // keep following the same rule (if the new board can)
+    		if (board instanceof Colony)
+    			((Colony) board).setTopology((Topology) edges.getSelectedItem());
+    		simulation.pause();
+    		cPanel.setColony(board);
+    		cPanel.show();
+    		scrollCPane.revalidate(); // size of the colony has changed (generation number goes back to 0 too)
+    	}
+    	catch (IllegalArgumentException e) // not a number, or not a legal size (NumberFormatException is one too)
+    	{
+    		JOptionPane.showMessageDialog(null, "The size you entered is not valid (or an unbounded colony can't follow the rule).", "Error", JOptionPane.INFORMATION_MESSAGE);
     	}
-    	catch (FileNotFoundException e) // catch FileNotFoundException
+    	catch (OutOfMemoryError e) // colony is too big
+    	{
+    		JOptionPane.showMessageDialog(null, "There is not enough memory for a colony of that size.", "Error", JOptionPane.INFORMATION_MESSAGE);
+    	}
+    }
+    
+    // Load preset stencils (from the pattern library, so nothing is read from disk)
+    public void loadStencil (int ID)
+    {
+    	if (PatternLibrary.STENCILS[ID] == null || !stamp (PatternLibrary.STENCILS[ID], true))
     	{
-    		e.printStackTrace();
-    	} 
+    		System.err.println ("Can't find stencil " + ID); // help diagnose problem
+    		return;
+    	}
     	
     	// Set generation number back to 0
-    	genNum = 0;
+    	simulation.restart();
     	
-    	if (ID == 4) // Clear was pressed; stop timer
-    		timer.stop();
+    	if (ID == 4) // Clear was pressed; stop running
+    		simulation.pause();
     }
     
     // Define what happens when action events are fired
@@ -416,26 +579,24 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
     {
         Object temp = (Object) e.getSource (); // which button was pressed
         
-        if (temp.equals(advanceBtn)) // Advance was pressed
+        if (temp.equals(backBtn)) // Back was pressed
         {
-			if (cPanel.getColony().anyCellsLeft())
-			{
-				genNum++;
-				Colony tempColony = cPanel.getColony(); // get colony from colony jpanel
-	        	tempColony.advance(); // advance the colony
-	        	cPanel.setColony (tempColony); // update the colony in the colony jpanel
-	        	cPanel.show();
-			}
+        	simulation.back(); // go back a generation (or undo the last change)
+        }
+        
+        else if (temp.equals(advanceBtn)) // Advance was pressed
+        {
+			simulation.step(); // advance the colony (if there are cells left)
         }
         
         else if (temp.equals (playBtn)) // Play was pressed
         {
-        	timer.start(); // start timer, which will fire action events for each advance
+        	simulation.play(); // start advancing on the simulation thread
         }
         
         else if (temp.equals (pauseBtn)) // Pause was pressed
         {
-        	timer.stop(); // stop timer
+        	simulation.pause(); // stop advancing
         }
         
         else if (temp.equals (saveBtn)) // Save was pressed
@@ -443,6 +604,21 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
         	save (); // Directs to save method
         }
         
+        else if (temp.equals (newBtn)) // New Colony was pressed
+        {
+        	newColony (); // Directs to newColony method
+        }
+        
+        else if (temp.equals (ruleBtn)) // Rule was pressed
+        {
+        	chooseRule (); // Directs to chooseRule method
+        }
+        
+        else if (temp.equals (patternsBtn)) // Patterns was pressed
+        {
+        	choosePattern (); // Directs to choosePattern method
+        }
+        
         else if (temp.equals (credit)) // "Click me" was pressed
         {
         	loadStencil (0); // load credits
@@ -453,18 +629,14 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
         	load (); // Directs to load method
         }
         
-        else if (temp.equals (timer)) // Timer was pressed
+        else if (temp.equals (stopOnCycle)) // Stop once repeating was ticked or unticked
         {
-        	if (cPanel.getColony().anyCellsLeft())
-        	{
-        		Colony tempColony = cPanel.getColony(); // get colony from colony JPanel
-        		tempColony.advance(); // advance colony
-        		cPanel.setColony (tempColony); // update colony in colony JPanel
-        		cPanel.show();
-        		genNum++; // increment generation number
-        		if (!cPanel.getColony().anyCellsLeft()) // no cells left; stop timer
-        			timer.stop();
-        	}
+        	simulation.setStopOnCycle (stopOnCycle.isSelected());
+        }
+        
+        else if (temp.equals (maxSpeed)) // Max speed was ticked or unticked
+        {
+        	simulation.setDelay (maxSpeed.isSelected() ? 0 : genSpeed.getValue()); // no waiting between generations at max speed
         }
         
         else if (temp.equals (toolsButtons [0] [0])) // Populate was pressed
@@ -508,35 +680,48 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
         				loadStencil (i * 3 + j + 1); // load appropriate stencil
         			}
         }
+        
+        updateCmpt(); // tools in use may have changed
     }
 	
 	// (main) JPanel that displays the colony
 	class ColonyPanel extends JPanel implements MouseMotionListener, MouseListener {
 		
-		private Colony colony;
+		private int rows, columns; // size of the colony (it is advanced and edited on the simulation thread)
+		private boolean unbounded; // whether the colony is a SparseColony
+		private Topology topology = Topology.DEAD; // what is past the edges of a bounded colony
 		private int popX1 = 0, popY1 = 0, popX2 = 0, popY2 = 0, zoom = 7;
 		private boolean firstCoordinate;
+		private BoardImage image = new BoardImage (); // pixels of the colony, reused between repaints
 		
 		// Default constructor
 		public ColonyPanel(double density) {
 			
 			// Initialize variables
-			colony = new Colony (density, 85);
+			setColony (new Colony (density, 85));
 			
 			// Set up JPanel
-			setPreferredSize (new Dimension (zoom * colony.getGrid().length, zoom * colony.getGrid()[0].length));
 			addMouseListener(this);
 			addMouseMotionListener (this);
 			setVisible(true);
 			repaint();	
 		}
 
-		// Setter method for zoom
+		// Setter method for zoom: pixels per cell, or at 0 and below, each pixel shows 2^(1 - zoom) * 2^(1 - zoom) cells
 		public void setZoom (int zoom)
 		{
 			this.zoom = zoom;
 			// set preferred size so the JScrollPane that holds the panel adjusts
-			setPreferredSize (new Dimension (zoom * colony.getGrid().length, zoom * colony.getGrid()[0].length));
+			if (zoom > 0)
+				setPreferredSize (new Dimension (zoom * columns, zoom * rows));
+			else
+				setPreferredSize (new Dimension (((columns - 1) >> (1 - zoom)) + 1, ((rows - 1) >> (1 - zoom)) + 1));
+		}
+		
+		// Returns the row or column of the cell at a pixel
+		private int toCell (int pixel)
+		{
+			return zoom > 0 ? pixel / zoom : pixel << (1 - zoom);
 		}
 		
 		// Start tracking coordinates for populating
@@ -555,23 +740,31 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
 			firstCoordinate = true;
 		}
 		
-		// Getter method to return colony
-		public Colony getColony ()
+		// Checks if the colony is unbounded
+		public boolean isUnbounded ()
 		{
-			return colony;
+			return unbounded;
 		}
 		
-		// Setter method to set colony
-		public void setColony (Colony newColony)
+		// Getter method for what is past the edges of the colony (if it is bounded)
+		public Topology getTopology ()
 		{
-			colony = newColony;
+			return topology;
 		}
 		
-		// Setter method to set colony (still in array form)
-		public void setColony (boolean[][] temp)
-	    {
-	    	colony.setColony(temp);
-	    }
+		// Setter method to set colony (the simulation thread takes it over)
+		public void setColony (Board newColony)
+		{
+			if (newColony instanceof Colony) // step it on the shared threads too
+				((Colony) newColony).setExecutor (stepper, stepper.getParallelism() * 4); // a few bands per thread so they finish together
+			rows = newColony.getRows();
+			columns = newColony.getColumns();
+			unbounded = newColony instanceof SparseColony;
+			if (newColony instanceof Colony)
+				topology = ((Colony) newColony).getTopology();
+			simulation.setColony (newColony);
+			setZoom (zoom); // colony may be a different size
+		}
 		
 		// Call repaint
 		public void show() {
@@ -582,24 +775,29 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
 		public void paintComponent(Graphics g) {
 			super.paintComponent(g); // override paintComponent
 			
-			boolean[][] colonyInfo = colony.getGrid();
-			
-			// Draw life forms/empty spaces
-			for (int row = 0; row < colonyInfo.length; row++) // go through colony with nested for loop
-				for (int col = 0; col < colonyInfo[0].length; col++) {
-					if (colonyInfo[row][col]) // life
-						g.setColor(Color.green);
-					else
-						g.setColor(Color.black); // empty space
-					g.fillRect(col * zoom, row * zoom, zoom, zoom); // draw appropiately coloured rectangle
-				}
+			// Draw life forms/empty spaces (newest generation the simulation thread has finished)
+			Snapshot colony = simulation.latest();
+			if (colony == null) // the simulation thread hasn't taken over the first colony yet
+				return;
+			simulation.getMetrics().drawing();
+			long start = System.nanoTime(); // (timed for the metrics)
+			if (zoom > 0)
+				image.draw (g, colony, 0, 0, zoom);
+			else // more than one cell per pixel; show how full each block of cells is
+			{
+				pyramid.update (colony);
+				image.draw (g, pyramid, 1 - zoom, 0, 0, 1);
+			}
 			
-			// Draw grid
-			g.setColor(Color.black);
-			for (int i = 0; i < colonyInfo.length; i++)
+			// Draw grid (only the lines inside the clip, which is the part showing in the scroll pane or newly scrolled into view)
+			if (zoom >= 5) // any closer together and the lines would cover the cells
 			{
-				g.drawLine (0, i * zoom, colonyInfo.length * zoom, i * zoom);
-				g.drawLine(i * zoom, 0, i * zoom, colonyInfo.length * zoom);
+				Rectangle clip = g.getClipBounds();
+				g.setColor(Color.black);
+				for (int i = clip.y / zoom; i <= (clip.y + clip.height) / zoom && i < colony.rows; i++)
+					g.drawLine (clip.x, i * zoom, Math.min(clip.x + clip.width, colony.columns * zoom), i * zoom);
+				for (int i = clip.x / zoom; i <= (clip.x + clip.width) / zoom && i < colony.columns; i++)
+					g.drawLine(i * zoom, clip.y, i * zoom, Math.min(clip.y + clip.height, colony.rows * zoom));
 			}
 
 			// Rectangle that shows where the user is populating/eradicating
@@ -628,9 +826,7 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
 		            g.drawRect (startX, startY, endX - startX, endY - startY); // draw outer highlighting rectangle
 	            }
 			}
-			
-			updateCmpt(); // update current view box and JLabel
-			
+			simulation.getMetrics().drawn(System.nanoTime() - start);
 		}
 
 		// Mouse dragged event
@@ -651,11 +847,14 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
 			else if (startedFree)
 			{
 				// Check for if user has gone out of bounds
-				if ((e.getX() / zoom >= 0) && (e.getX()/ zoom < colony.getGrid().length) && (e.getY() / zoom >= 0) && (e.getY()/ zoom < colony.getGrid().length))
+				if ((toCell(e.getX()) >= 0) && (toCell(e.getX()) < columns) && (toCell(e.getY()) >= 0) && (toCell(e.getY()) < rows))
 				{
-					colony.populateOne (e.getX() / zoom, e.getY() / zoom); // put cell into location
-					revalidate();
-					repaint();
+					final int x = toCell(e.getX()), y = toCell(e.getY());
+					simulation.edit (new Simulation.Edit () {
+						public void apply(Board colony) {
+							colony.populateOne (x, y); // put cell into location
+						}
+					});
 				}
 			}
 		}
@@ -689,46 +888,50 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
 			if (startedPop || startedErad) // if populating/eradicating, this is the final position of rectangle
 			{			
 				// Determine start/end points of population/eradication area
-				int startX = Math.min(popX1 / zoom, popX2 / zoom);  
-	            int startY = Math.min(popY1 / zoom, popY2 / zoom);
-	            int endX = Math.max(popX1 / zoom, popX2 / zoom);
-	            int endY = Math.max(popY1 / zoom, popY2 / zoom);
+				int startX = Math.min(toCell(popX1), toCell(popX2));  
+	            int startY = Math.min(toCell(popY1), toCell(popY2));
+	            int endX = Math.max(toCell(popX1), toCell(popX2));
+	            int endY = Math.max(toCell(popY1), toCell(popY2));
 	            
 	            // Check if the user is completely out of bounds to the right or below (do nothing)
-	            if (startX < colony.getGrid().length && endX > 0 && startY < colony.getGrid()[0].length && endY > 0)
+	            if (startX < columns && endX > 0 && startY < rows && endY > 0)
 	            {	
 		            // Check and correct for if the user has one end of the rectangle out of bounds
 		            if (startX < 0)
 		            	startX = 0;
-		            else if (startX >= colony.getGrid().length)
-		            	startX = colony.getGrid().length - 1;
+		            else if (startX >= columns)
+		            	startX = columns - 1;
 		            
 		            if (endX < 0)
 		            	endX = 0;
-		            else if (endX >= colony.getGrid().length)
-		            	endX = colony.getGrid().length - 1;
+		            else if (endX >= columns)
+		            	endX = columns - 1;
 		            
 		            if (startY < 0)
 		            	startY = 0;
-		            else if (startY >= colony.getGrid().length)
-		            	startY = colony.getGrid().length - 1;
+		            else if (startY >= rows)
+		            	startY = rows - 1;
 		            
 		            if (endY < 0)
 		            	endY = 0;
-		            else if (endY >= colony.getGrid().length)
-		            	endY = colony.getGrid().length - 1;
-		            
-		            if (startedPop) // populate area
-		            {
-						colony.populate(startX, endX, startY, endY); 
-		            }
-		            
-		            else // eradicate area
-		            {
-			            colony.eradicate(startX, endX, startY, endY);
-		            }            
+		            else if (endY >= rows)
+		            	endY = rows - 1;
 		            
-					repaint();
+		            final int x1 = startX, x2 = endX, y1 = startY, y2 = endY;
+		            final boolean populate = startedPop;
+		            simulation.edit (new Simulation.Edit () {
+		            	public void apply(Board colony) {
+				            if (populate) // populate area
+				            {
+								colony.populate(x1, x2, y1, y2); 
+				            }
+				            
+				            else // eradicate area
+				            {
+					            colony.eradicate(x1, x2, y1, y2);
+				            }            
+		            	}
+		            });
 	            }
 	            
 	            // Reset values to keep populating/eradicating
@@ -745,6 +948,13 @@ public class LifeSimulation extends JFrame implements ActionListener, ChangeList
 	// Main method
     public static void main (String [] args)
     {
+    	// Run without a window if there are command line arguments
+    	if (args.length > 0)
+    	{
+    		LifeBatch.main (args);
+    		return;
+    	}
+    	
     	// Set look and feel
 		try {
 			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -0,0 +1,236 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Measures how the simulation is running: how long each generation takes to step (in a histogram, so the slow
+// generations show up as well as the mean), generations and cell updates per second, how long each frame takes to
+// draw and how much memory stepping a generation allocates. Shown in the window's toolbar and by LifeBatch, and
+// available to JMX clients (such as jconsole) once registered. If JfrMetrics (in the vector folder) can be loaded,
+// every generation and frame is also recorded as a Java Flight Recorder event. Safe to use from any thread
+public class Metrics implements MetricsMBean
+{
+	private static final int SUB_BUCKETS = 8; // ranges in the histogram for each doubling of the time (each is within 12.5%)
+	private static final long WINDOW = 1000000000L; // nanoseconds the rates are measured over
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean ();
+
+	private final long[] histogram = new long [64 * SUB_BUCKETS]; // number of generations that took each range of nanoseconds
+	private long steps, stepNanos, maxNanos; // generations stepped, the time they took altogether and the longest one
+	private long windowStart = System.nanoTime (); // when the current window began
+	private long windowSteps, windowCells, windowBytes, windowFrames, windowDrawNanos; // measured so far this window
+	private double stepsPerSecond, cellsPerSecond, bytesPerStep, drawMillis; // measured over the last window
+	private final MetricsListener listener = findListener (); // records Flight Recorder events (null if it can't be loaded)
+
+	// Make the metrics available to JMX clients as ConwaysGameOfLife:type=Metrics; returns false if they can't be
+	// (only one set of metrics can be registered)
+	public boolean register ()
+	{
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer ().registerMBean (this, new ObjectName ("ConwaysGameOfLife:type=Metrics"));
+			return true;
+		}
+		catch (JMException e)
+		{
+			return false;
+		}
+	}
+
+	// Returns the Flight Recorder listener, or null if it isn't there or the JVM has no Flight Recorder
+	private static MetricsListener findListener ()
+	{
+		try
+		{
+			return (MetricsListener) Class.forName ("JfrMetrics").getDeclaredConstructor ().newInstance ();
+		}
+		catch (ReflectiveOperationException | LinkageError e) // not built in, or too old a Java
+		{
+			return null;
+		}
+	}
+
+	// Returns the memory the current thread has allocated so far (0 if the JVM can't tell)
+	public static long allocated ()
+	{
+		if (threads instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled ())
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes (Thread.currentThread ().getId ());
+		return 0;
+	}
+
+	// Note that a generation is about to be stepped on this thread (so a Flight Recorder event can start timing it)
+	public void stepping ()
+	{
+		if (listener != null)
+			listener.stepping ();
+	}
+
+	// Record a generation stepped, which took nanos nanoseconds to work out cells cells and allocated bytes bytes
+	public void stepped (long generation, long nanos, long cells, long bytes)
+	{
+		synchronized (this)
+		{
+			histogram [bucket (nanos)]++;
+			steps++;
+			stepNanos += nanos;
+			maxNanos = Math.max (maxNanos, nanos);
+			roll ();
+			windowSteps++;
+			windowCells += cells;
+			windowBytes += bytes;
+		}
+		if (listener != null)
+			listener.stepped (generation, nanos, cells, bytes);
+	}
+
+	// Note that a frame is about to be drawn on this thread
+	public void drawing ()
+	{
+		if (listener != null)
+			listener.drawing ();
+	}
+
+	// Record a frame drawn, which took nanos nanoseconds
+	public void drawn (long nanos)
+	{
+		synchronized (this)
+		{
+			roll ();
+			windowFrames++;
+			windowDrawNanos += nanos;
+		}
+		if (listener != null)
+			listener.drawn (nanos);
+	}
+
+	// Work out the rates and start a new window if the current one is over
+	private void roll ()
+	{
+		long now = System.nanoTime (), elapsed = now - windowStart;
+		if (elapsed < WINDOW)
+			return;
+		stepsPerSecond = windowSteps * 1e9 / elapsed;
+		cellsPerSecond = windowCells * 1e9 / elapsed;
+		bytesPerStep = windowSteps > 0 ? (double) windowBytes / windowSteps : 0;
+		if (windowFrames > 0) // (keep showing the last frame's time while nothing is drawn)
+			drawMillis = windowDrawNanos / 1e6 / windowFrames;
+		windowStart = now;
+		windowSteps = windowCells = windowBytes = windowFrames = windowDrawNanos = 0;
+	}
+
+	// Returns the histogram bucket for a time: times up to SUB_BUCKETS nanoseconds have one each, and after that
+	// each doubling of the time is split into SUB_BUCKETS ranges
+	private static int bucket (long nanos)
+	{
+		if (nanos < SUB_BUCKETS)
+			return (int) Math.max (0, nanos);
+		int doubling = 63 - Long.numberOfLeadingZeros (nanos); // (at least 3)
+		return (doubling - 2) * SUB_BUCKETS + (int) ((nanos >>> (doubling - 3)) & (SUB_BUCKETS - 1));
+	}
+
+	// Returns the shortest time in a histogram bucket
+	private static long lowest (int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (bucket / SUB_BUCKETS - 1);
+	}
+
+	// Returns the time in milliseconds that a fraction of the generations took no longer than (to within a bucket)
+	private double percentile (double fraction)
+	{
+		long wanted = (long) Math.ceil (fraction * steps), counted = 0;
+		for (int i = 0; i < histogram.length; i++)
+		{
+			counted += histogram [i];
+			if (counted >= wanted && counted > 0)
+				return Math.min (lowest (i + 1) - 1, maxNanos) / 1e6;
+		}
+		return 0;
+	}
+
+	// Getter methods for the measurements (see MetricsMBean)
+	public synchronized long getGenerations ()
+	{
+		return steps;
+	}
+
+	public synchronized double getGenerationsPerSecond ()
+	{
+		roll ();
+		return stepsPerSecond;
+	}
+
+	public synchronized double getCellUpdatesPerSecond ()
+	{
+		roll ();
+		return cellsPerSecond;
+	}
+
+	public synchronized double getStepMillisMean ()
+	{
+		return steps == 0 ? 0 : stepNanos / 1e6 / steps;
+	}
+
+	public synchronized double getStepMillisP50 ()
+	{
+		return percentile (0.5);
+	}
+
+	public synchronized double getStepMillisP90 ()
+	{
+		return percentile (0.9);
+	}
+
+	public synchronized double getStepMillisP99 ()
+	{
+		return percentile (0.99);
+	}
+
+	public synchronized double getStepMillisMax ()
+	{
+		return maxNanos / 1e6;
+	}
+
+	public synchronized String[] getStepHistogram ()
+	{
+		List<String> lines = new ArrayList<String> ();
+		for (int i = 0; i < histogram.length; i++)
+			if (histogram [i] > 0)
+				lines.add (String.format ("%.4f - %.4f ms: %d", lowest (i) / 1e6, (lowest (i + 1) - 1) / 1e6, histogram [i]));
+		return lines.toArray (new String [lines.size ()]);
+	}
+
+	public synchronized double getDrawMillis ()
+	{
+		roll ();
+		return drawMillis;
+	}
+
+	public synchronized double getAllocatedBytesPerGeneration ()
+	{
+		roll ();
+		return bytesPerStep;
+	}
+
+	// Start measuring again
+	public synchronized void reset ()
+	{
+		Arrays.fill (histogram, 0);
+		steps = stepNanos = maxNanos = 0;
+		windowStart = System.nanoTime ();
+		windowSteps = windowCells = windowBytes = windowFrames = windowDrawNanos = 0;
+		stepsPerSecond = cellsPerSecond = bytesPerStep = drawMillis = 0;
+	}
+
+	// Returns the measurements in one line, for the toolbar
+	public synchronized String toString ()
+	{
+		roll ();
+		return String.format ("Step: %.2f ms (99%% under %.2f ms) | %.0f gen/s | %.3g cells/s | Draw: %.1f ms | %.1f KB/gen",
+				getStepMillisMean (), getStepMillisP99 (), stepsPerSecond, cellsPerSecond, drawMillis, bytesPerStep / 1024);
+	}
+}
@@ -0,0 +1,17 @@
+// Told about every generation stepped and frame drawn that Metrics measures, as it starts and once it is done (on
+// the thread doing it). The game itself is built for Java 7, so the only one is JfrMetrics (in the vector folder),
+// which records them as Java Flight Recorder events
+public interface MetricsListener
+{
+	// A generation is about to be stepped
+	public void stepping ();
+
+	// A generation was stepped, taking nanos nanoseconds to work out cells cells and allocating bytes bytes
+	public void stepped (long generation, long nanos, long cells, long bytes);
+
+	// A frame is about to be drawn
+	public void drawing ();
+
+	// A frame was drawn, taking nanos nanoseconds
+	public void drawn (long nanos);
+}
@@ -0,0 +1,29 @@
+// What Metrics shows to JMX clients such as jconsole (see Metrics)
+public interface MetricsMBean
+{
+	// Number of generations stepped since the metrics were last reset
+	public long getGenerations ();
+
+	// Generations and cell updates (cells worked out) per second, over the last second or so
+	public double getGenerationsPerSecond ();
+	public double getCellUpdatesPerSecond ();
+
+	// Time taken to step a generation: the mean, the median, the 90th and 99th percentiles and the longest
+	public double getStepMillisMean ();
+	public double getStepMillisP50 ();
+	public double getStepMillisP90 ();
+	public double getStepMillisP99 ();
+	public double getStepMillisMax ();
+
+	// Histogram of the time taken to step each generation, one line per range of times that has any
+	public String[] getStepHistogram ();
+
+	// Mean time taken to draw a frame, over the last second or so
+	public double getDrawMillis ();
+
+	// Mean memory allocated by the simulation thread while stepping a generation, over the last second or so
+	public double getAllocatedBytesPerGeneration ();
+
+	// Start measuring again
+	public void reset ();
+}
@@ -0,0 +1,149 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Patterns that can be stamped into a colony, by name: the stencils that come with the game, and any patterns in
+// folders the user adds. Each pattern is read once and kept in RLE format, which takes a few hundred bytes for a
+// stencil instead of the 20,000 of its file. Patterns are decoded into colonies when they are stamped, and the most
+// recently used ones are kept decoded, so stamping them again doesn't read or decode anything
+public class PatternLibrary
+{
+	// Names of the stencils that come with the game, by the number of their file in the stencils folder (null for
+	// numbers with no file)
+	public static final String[] STENCILS = {"Credits", null, null, null, "Clear", "R-pentomino", "Glider gun", "Pulsar", "Die hard", "Puffers"};
+
+	private static final Charset ASCII = Charset.forName ("US-ASCII");
+	private static final int STENCIL_SIZE = 100; // stencils are 100 * 100
+
+	private final Map<String, byte[]> encoded = new LinkedHashMap<String, byte[]> (); // each pattern in RLE format, in the order added
+	private final Map<String, Colony> decoded; // the most recently used patterns, decoded (least recently used first)
+
+	// Constructor that reads the stencils; at most maxDecoded patterns are kept decoded at once
+	public PatternLibrary (final int maxDecoded)
+	{
+		decoded = new LinkedHashMap<String, Colony> (16, 0.75f, true) // (kept in the order they were used)
+		{
+			protected boolean removeEldestEntry (Map.Entry<String, Colony> eldest)
+			{
+				return size () > maxDecoded;
+			}
+		};
+		for (int i = 0; i < STENCILS.length; i++)
+			if (STENCILS [i] != null)
+			{
+				Colony stencil = readStencil (i);
+				if (stencil != null)
+					add (STENCILS [i], stencil);
+			}
+	}
+
+	// Read a stencil from the classpath (where it is in the jar), or failing that from the stencils folder in the
+	// working directory; returns null if it can't be found or isn't legal
+	private static Colony readStencil (int id)
+	{
+		InputStream in = PatternLibrary.class.getResourceAsStream ("/stencils/" + id + ".txt");
+		try
+		{
+			if (in == null)
+				in = new FileInputStream (new File ("stencils", id + ".txt"));
+		}
+		catch (FileNotFoundException e)
+		{
+			return null;
+		}
+		return ColonyFile.load (in, STENCIL_SIZE, STENCIL_SIZE, 0);
+	}
+
+	// Add a pattern (replacing any with the same name). The pattern is copied, so the caller can keep changing it
+	public synchronized void add (String name, Colony pattern)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+		try
+		{
+			Writer out = new OutputStreamWriter (bytes, ASCII);
+			ColonyFile.write (pattern, out);
+			out.flush ();
+		}
+		catch (IOException e) // can't happen writing to memory
+		{
+			throw new IllegalStateException (e);
+		}
+		encoded.put (name, bytes.toByteArray ());
+		decoded.remove (name);
+	}
+
+	// Add every legal pattern file (.txt or .rle) in a folder, named after the file without its extension; returns
+	// the number added. Old format files are taken to be square
+	public int addFolder (File folder)
+	{
+		File[] files = folder.listFiles ();
+		if (files == null) // not a folder
+			return 0;
+		int added = 0;
+		for (File file : files)
+		{
+			String name = file.getName (), lower = name.toLowerCase ();
+			if (!file.isFile () || !(lower.endsWith (".txt") || lower.endsWith (".rle")))
+				continue;
+			try
+			{
+				Colony pattern = ColonyFile.load (file, 0, 0, 0);
+				if (pattern != null)
+				{
+					add (name.substring (0, name.lastIndexOf ('.')), pattern);
+					added++;
+				}
+			}
+			catch (FileNotFoundException e) // removed since the folder was listed
+			{
+				// leave it out
+			}
+		}
+		return added;
+	}
+
+	// Returns a pattern, or null if there isn't one with that name. The same colony is returned each time while it is
+	// kept decoded, so it mustn't be changed (copy its cells with Board.place)
+	public synchronized Colony get (String name)
+	{
+		Colony pattern = decoded.get (name);
+		if (pattern == null && encoded.containsKey (name))
+		{
+			pattern = ColonyFile.load (new ByteArrayInputStream (encoded.get (name)), 0, 0, 0);
+			decoded.put (name, pattern);
+		}
+		return pattern;
+	}
+
+	// Returns the names of the patterns, in the order they were added
+	public synchronized List<String> getNames ()
+	{
+		return new ArrayList<String> (encoded.keySet ());
+	}
+
+	// Returns the memory used by the patterns in RLE format
+	public synchronized long getEncodedBytes ()
+	{
+		long bytes = 0;
+		for (byte[] pattern : encoded.values ())
+			bytes += pattern.length;
+		return bytes;
+	}
+
+	// Returns the number of patterns kept decoded
+	public synchronized int getDecodedNum ()
+	{
+		return decoded.size ();
+	}
+}
@@ -0,0 +1,12 @@
+// Works out the next generation of a run of words in a row under Conway's rule, several words at a time.
+// The game itself is built for Java 7, so the only one is VectorRowStepper (in the vector folder), which uses the
+// Java Vector API; Colony loads it if it can, and otherwise steps one word at a time (see Colony.advanceTile)
+public interface RowStepper
+{
+	// Returns the number of words worked out at once (runs shorter than this aren't worth handing over)
+	public int getLanes ();
+
+	// Set dst [i] to the next generation of src [i] for every i from from up to to, with rows of words words.
+	// Every word read must be inside the colony: the words before from and at to, and the rows above and below
+	public void step (long[] src, long[] dst, int from, int to, int words);
+}
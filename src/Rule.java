@@ -0,0 +1,348 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Which cells are born and which survive, given how many of their neighbours are alive. Rules are read from
+// rulestrings:
+//
+//   B3/S23 or 23/3              born with 3 neighbours, survive with 2 or 3 (Conway's Life, the default)
+//   B2/S/C3 or /2/3             "Generations": cells that don't survive take C - 2 more generations to die, and
+//                               while dying they aren't alive (so aren't neighbours) but nothing can be born there
+//   R5,C0,M1,S34..58,B34..45,NM "Larger than Life": neighbours out to a radius, with M1 counting the cell itself
+//
+// A rule is compiled into a short list of terms, each a range of neighbour counts with what it does (births,
+// survival or both). Colonies count neighbours for 64 cells at a time into bit-sliced numbers (bit b of every cell's
+// count in one long), and the terms are checked against those with bitwise operations, so any rule steps the same
+// way Conway's does, without looking at cells one at a time. Rules that count the eight cells around each cell are
+// also compiled into masks for each number of neighbours that does anything (see nextWord)
+public final class Rule
+{
+	public static final int MAX_RADIUS = 16; // (neighbours have to be within the tiles next to a cell's own)
+	public static final Rule LIFE = parse ("B3/S23");
+
+	private static final int BIRTH = 1, SURVIVAL = 2, BOTH = 3; // what a term does
+
+	private final String name; // rulestring, written the standard way
+	private final int radius, states;
+	private final int bits; // bits in a neighbour count
+	private final int[] lows, highs, kinds; // terms: ranges of neighbour counts, and what they do
+	private final boolean bornAlone; // cells are born with no neighbours (B0)
+	private final long[] ones, twos, fours, eights; // bits of each number of neighbours that does anything, as masks (radius 1 only)
+	private final long[] births, survivals; // whether cells with that number of neighbours are born and survive (0 or -1)
+
+	// Constructor; born [n] and survives [n] say what happens to a cell with n neighbours (not counting itself)
+	private Rule (String name, int radius, int states, boolean[] born, boolean[] survives)
+	{
+		this.name = name;
+		this.radius = radius;
+		this.states = states;
+		int maxCount = born.length - 1;
+		bits = 32 - Integer.numberOfLeadingZeros (maxCount);
+		bornAlone = born [0];
+
+		// Join up runs of counts that do the same thing
+		List<int[]> terms = new ArrayList<int[]> ();
+		for (int n = 0; n <= maxCount; n++)
+		{
+			int kind = (born [n] ? BIRTH : 0) | (survives [n] ? SURVIVAL : 0);
+			if (kind == 0)
+				continue;
+			int[] last = terms.isEmpty () ? null : terms.get (terms.size () - 1);
+			if (last != null && last [1] == n - 1 && last [2] == kind)
+				last [1] = n;
+			else
+				terms.add (new int[] {n, n, kind});
+		}
+		lows = new int [terms.size ()];
+		highs = new int [terms.size ()];
+		kinds = new int [terms.size ()];
+		for (int i = 0; i < terms.size (); i++)
+		{
+			lows [i] = terms.get (i) [0];
+			highs [i] = terms.get (i) [1];
+			kinds [i] = terms.get (i) [2];
+		}
+
+		// Masks for nextWord: n neighbours where every bit of the count matches a bit of n
+		int used = 0;
+		for (int n = 0; n <= maxCount && radius == 1; n++)
+			if (born [n] || survives [n])
+				used++;
+		ones = new long [used];
+		twos = new long [used];
+		fours = new long [used];
+		eights = new long [used];
+		births = new long [used];
+		survivals = new long [used];
+		for (int n = 0, t = 0; t < used; n++)
+			if (born [n] || survives [n])
+			{
+				ones [t] = (n & 1) != 0 ? -1L : 0;
+				twos [t] = (n & 2) != 0 ? -1L : 0;
+				fours [t] = (n & 4) != 0 ? -1L : 0;
+				eights [t] = (n & 8) != 0 ? -1L : 0;
+				births [t] = born [n] ? -1L : 0;
+				survivals [t++] = survives [n] ? -1L : 0;
+			}
+	}
+
+	// Read a rulestring (see above); throws IllegalArgumentException if it isn't one
+	public static Rule parse (String rulestring)
+	{
+		String text = rulestring.trim ().toUpperCase ();
+		try
+		{
+			if (text.startsWith ("R") && text.contains (","))
+				return parseLargerThanLife (text);
+
+			String[] parts = text.split ("/", -1);
+			if (parts.length < 2 || parts.length > 3)
+				throw new IllegalArgumentException ("Not a rule: " + rulestring);
+			String birth, survival;
+			if (parts [0].startsWith ("B") || parts [1].startsWith ("S")) // B3/S23
+			{
+				birth = strip (parts [0], 'B');
+				survival = strip (parts [1], 'S');
+			}
+			else // S/B order: 23/3
+			{
+				survival = strip (parts [0], 'S');
+				birth = strip (parts [1], 'B');
+			}
+			int states = parts.length == 3 ? Integer.parseInt (strip (parts [2], 'C')) : 2;
+			if (states < 2 || states > 256)
+				throw new IllegalArgumentException ("Rules can't have " + states + " states");
+
+			boolean[] born = digits (birth), survives = digits (survival);
+			String name = "B" + digits (born) + "/S" + digits (survives) + (states > 2 ? "/C" + states : "");
+			return new Rule (name, 1, states, born, survives);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException ("Not a rule: " + rulestring);
+		}
+	}
+
+	// Read a Larger than Life rulestring (R radius, C states, M 0 or 1, S low..high, B low..high, NM)
+	private static Rule parseLargerThanLife (String text)
+	{
+		int radius = 0, states = 2, lowS = -1, highS = -1, lowB = -1, highB = -1;
+		boolean middle = false;
+		for (String part : text.split (","))
+		{
+			part = part.trim ();
+			String value = part.substring (1);
+			switch (part.charAt (0))
+			{
+			case 'R':
+				radius = Integer.parseInt (value);
+				break;
+			case 'C':
+				states = Math.max (2, Integer.parseInt (value)); // (C0 means two states too)
+				break;
+			case 'M':
+				middle = value.equals ("1");
+				break;
+			case 'S':
+			case 'B':
+				String[] range = value.split ("\\.\\.");
+				int low = Integer.parseInt (range [0]), high = Integer.parseInt (range [range.length - 1]);
+				if (part.charAt (0) == 'S')
+				{
+					lowS = low;
+					highS = high;
+				}
+				else
+				{
+					lowB = low;
+					highB = high;
+				}
+				break;
+			case 'N':
+				if (!value.equals ("M"))
+					throw new IllegalArgumentException ("Only the square (Moore) neighbourhood is supported");
+				break;
+			default:
+				throw new IllegalArgumentException ("Not a rule: " + text);
+			}
+		}
+		if (radius < 1 || radius > MAX_RADIUS)
+			throw new IllegalArgumentException ("Radius has to be 1 to " + MAX_RADIUS);
+		if (states > 256)
+			throw new IllegalArgumentException ("Rules can't have " + states + " states");
+
+		// Counts that include the cell itself are one more for living cells (dead cells add nothing)
+		int cells = (2 * radius + 1) * (2 * radius + 1);
+		boolean[] born = new boolean [cells], survives = new boolean [cells];
+		for (int n = Math.max (0, lowB); n <= Math.min (cells - 1, highB); n++)
+			born [n] = true;
+		for (int n = Math.max (0, lowS); n <= highS; n++)
+		{
+			int neighbours = middle ? n - 1 : n;
+			if (neighbours >= 0 && neighbours < cells)
+				survives [neighbours] = true;
+		}
+		String name = "R" + radius + ",C" + (states > 2 ? states : 0) + ",M" + (middle ? 1 : 0) + ",S" + lowS + ".." + highS + ",B" + lowB + ".." + highB + ",NM";
+		return new Rule (name, radius, states, born, survives);
+	}
+
+	// Returns part of a rulestring without its letter
+	private static String strip (String part, char letter)
+	{
+		return part.length () > 0 && part.charAt (0) == letter ? part.substring (1) : part;
+	}
+
+	// Returns which of 0 to 8 neighbours are in a string of digits
+	private static boolean[] digits (String text)
+	{
+		boolean[] set = new boolean [9];
+		for (char c : text.toCharArray ())
+		{
+			if (c < '0' || c > '8')
+				throw new IllegalArgumentException ("Not a number of neighbours: " + c);
+			set [c - '0'] = true;
+		}
+		return set;
+	}
+
+	// Returns the digits of the counts in a set, in order
+	private static String digits (boolean[] set)
+	{
+		StringBuilder text = new StringBuilder ();
+		for (int n = 0; n < set.length; n++)
+			if (set [n])
+				text.append (n);
+		return text.toString ();
+	}
+
+	// Getter methods for how far away neighbours are counted from, and the number of states (2 unless dying
+	// cells take a while to die)
+	public int getRadius ()
+	{
+		return radius;
+	}
+
+	public int getStates ()
+	{
+		return states;
+	}
+
+	// Getter method for the number of bits in a neighbour count (the length of the count arrays passed in)
+	public int getCountBits ()
+	{
+		return bits;
+	}
+
+	// Checks if cells are born with no neighbours at all (so empty space comes alive)
+	public boolean isBornAlone ()
+	{
+		return bornAlone;
+	}
+
+	// Checks if this is Conway's Life
+	public boolean isLife ()
+	{
+		return name.equals ("B3/S23");
+	}
+
+	// Returns the rulestring
+	public String toString ()
+	{
+		return name;
+	}
+
+	// Rules are the same if their rulestrings are
+	public boolean equals (Object other)
+	{
+		return other instanceof Rule && ((Rule) other).name.equals (name);
+	}
+
+	public int hashCode ()
+	{
+		return name.hashCode ();
+	}
+
+	// Works out which of 64 cells are alive next generation, from their bit-sliced neighbour counts, which of them
+	// are alive now, and which are dying (Generations rules only; nothing is born in a dying cell)
+	public long next (long[] count, long alive, long dying)
+	{
+		long next = 0;
+		for (int t = 0; t < lows.length; t++)
+		{
+			long where = kinds [t] == BOTH ? ~dying : kinds [t] == BIRTH ? ~alive & ~dying : alive;
+			next |= where & between (count, lows [t], highs [t]);
+		}
+		return next;
+	}
+
+	// Works out the new generation of the 64 cells in m1 under a rule with a radius of 1, given the words around it
+	// (like Colony.nextWord) and which of its cells are dying. The neighbours are added up with the same bitwise
+	// adders, then each number of neighbours the rule uses is matched against all four bits of the counts at once
+	public long nextWord (long a0, long a1, long a2, long m0, long m1, long m2, long b0, long b1, long b2, long dying)
+	{
+		long aL = (a1 << 1) | (a0 >>> 63), aR = (a1 >>> 1) | (a2 << 63);
+		long mL = (m1 << 1) | (m0 >>> 63), mR = (m1 >>> 1) | (m2 << 63);
+		long bL = (b1 << 1) | (b0 >>> 63), bR = (b1 >>> 1) | (b2 << 63);
+
+		long aOnes = aL ^ a1 ^ aR, aTwos = (aL & a1) | (aR & (aL ^ a1));
+		long mOnes = mL ^ mR, mTwos = mL & mR;
+		long bOnes = bL ^ b1 ^ bR, bTwos = (bL & b1) | (bR & (bL ^ b1));
+
+		long carry = (aOnes & mOnes) | (bOnes & (aOnes ^ mOnes));
+		long twosSum = aTwos ^ mTwos ^ bTwos, twosCarry = (aTwos & mTwos) | (bTwos & (aTwos ^ mTwos));
+		long c0 = aOnes ^ mOnes ^ bOnes, c1 = twosSum ^ carry;
+		long c2 = twosCarry ^ (twosSum & carry), c3 = twosCarry & twosSum & carry;
+
+		long empty = ~m1 & ~dying, next = 0;
+		for (int t = 0; t < ones.length; t++)
+			next |= ~((c0 ^ ones [t]) | (c1 ^ twos [t]) | (c2 ^ fours [t]) | (c3 ^ eights [t])) & ((empty & births [t]) | (m1 & survivals [t]));
+		return next;
+	}
+
+	// Returns which counts are from low to high
+	private long between (long[] count, int low, int high)
+	{
+		if (low == high)
+			return equal (count, low);
+		long within = low == 0 ? -1L : atLeast (count, low);
+		if (high < (1 << bits) - 1)
+			within &= ~atLeast (count, high + 1);
+		return within;
+	}
+
+	// Returns which bit-sliced numbers are equal to n
+	static long equal (long[] count, int n)
+	{
+		long equal = -1L;
+		for (int b = 0; b < count.length; b++)
+			equal &= (n & (1 << b)) != 0 ? count [b] : ~count [b];
+		return n >>> count.length == 0 ? equal : 0;
+	}
+
+	// Returns which bit-sliced numbers are n or more (comparing from the top bit down)
+	static long atLeast (long[] count, int n)
+	{
+		if (n >>> count.length != 0)
+			return 0;
+		long greater = 0, equal = -1L;
+		for (int b = count.length - 1; b >= 0; b--)
+			if ((n & (1 << b)) != 0)
+				equal &= count [b];
+			else
+			{
+				greater |= equal & count [b];
+				equal &= ~count [b];
+			}
+		return greater | equal;
+	}
+
+	// Adds 1 to the bit-sliced numbers where a word has a 1
+	static void add (long[] count, long word)
+	{
+		for (int b = 0; b < count.length && word != 0; b++)
+		{
+			long carry = count [b] & word;
+			count [b] ^= word;
+			word = carry;
+		}
+	}
+}
@@ -0,0 +1,330 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+
+// Steps a colony too big for one JVM by splitting it into bands of rows (shards) across several worker processes
+// (see ShardWorker), on this machine or others. Before every generation each worker is sent the rows just past its
+// band's edges (the halo, as deep as the rule's radius) from the bands next to it, wrapped round or flipped at the
+// top and bottom of the colony as Colony does for its topology, so the colony steps exactly as one Colony would.
+// The workers step their bands at the same time and send back their counts and the rows along their edges; the
+// driver only ever holds those. The colony is read from its file a row at a time and handed straight out to the
+// workers, so it never has to fit in the driver's memory. Dying cells (under Generations rules) aren't copied in or
+// out, only live ones
+public class ShardDriver
+{
+	private final int rows, columns, words, halo; // size of the colony, longs in each row, and rows in each halo
+	private final Topology topology;
+	private final Rule rule;
+	private final int[] firstRows; // first row of each band (and the number of rows, after the last)
+	private final Socket[] sockets;
+	private final DataInputStream[] ins;
+	private final DataOutputStream[] outs;
+	private final Process[] processes; // worker processes started by the driver (null for ones it connected to)
+	private final long[][] tops, bottoms; // first and last halo rows of each band as they are now
+	private long population, births, deaths, hash;
+	private final long[] stepNanos, maxNanos; // time each worker has spent stepping its band, altogether and at most
+	private long generations, roundNanos; // generations stepped, and the time they took from start to finish
+
+	// Constructor that starts shards worker processes on this machine, each stepping its band on threads threads,
+	// and loads the rest of the rows from cells into them, to follow a rule with a topology
+	public ShardDriver (ColonyFile.RowReader cells, Rule rule, Topology topology, int shards, int threads) throws IOException
+	{
+		this (cells, rule, topology, null, shards, threads);
+	}
+
+	// Constructor that connects to workers already running (one band each)
+	public ShardDriver (ColonyFile.RowReader cells, Rule rule, Topology topology, List<InetSocketAddress> workers) throws IOException
+	{
+		this (cells, rule, topology, workers, workers.size (), 0);
+	}
+
+	// Constructor that loads the cells into the workers
+	private ShardDriver (ColonyFile.RowReader cells, Rule rule, Topology topology, List<InetSocketAddress> workers, int shards, int threads) throws IOException
+	{
+		rows = cells.getRows ();
+		columns = cells.getColumns ();
+		words = (columns + 63) >>> 6;
+		this.topology = topology;
+		this.rule = rule;
+		halo = rule.getRadius ();
+		shards = Math.max (1, Math.min (shards, rows / halo)); // each band needs a full halo's worth of rows for the next one
+
+		firstRows = new int [shards + 1];
+		for (int i = 0; i <= shards; i++)
+			firstRows [i] = (int) ((long) rows * i / shards);
+		sockets = new Socket [shards];
+		ins = new DataInputStream [shards];
+		outs = new DataOutputStream [shards];
+		processes = new Process [shards];
+		tops = new long [shards][halo * words];
+		bottoms = new long [shards][halo * words];
+		stepNanos = new long [shards];
+		maxNanos = new long [shards];
+
+		try
+		{
+			for (int i = 0; i < shards; i++)
+			{
+				InetSocketAddress address = workers != null ? workers.get (i) : start (i, threads);
+				sockets [i] = new Socket (address.getAddress (), address.getPort ());
+				sockets [i].setTcpNoDelay (true);
+				ins [i] = new DataInputStream (new BufferedInputStream (sockets [i].getInputStream (), 1 << 16));
+				outs [i] = new DataOutputStream (new BufferedOutputStream (sockets [i].getOutputStream (), 1 << 16));
+			}
+			long[] row = new long [words];
+			for (int i = 0; i < shards; i++)
+			{
+				DataOutputStream out = outs [i];
+				out.write (ShardWorker.LOAD);
+				out.writeInt (firstRows [i + 1] - firstRows [i]);
+				out.writeInt (columns);
+				out.writeUTF (rule.toString ());
+				out.writeBoolean (topology.wrapsColumns ());
+				for (int r = firstRows [i]; r < firstRows [i + 1]; r++)
+				{
+					cells.readRow (row);
+					for (int w = 0; w < words; w++)
+						out.writeLong (row [w]);
+					if (r - firstRows [i] < halo)
+						System.arraycopy (row, 0, tops [i], (r - firstRows [i]) * words, words);
+					if (firstRows [i + 1] - r <= halo)
+						System.arraycopy (row, 0, bottoms [i], (halo - (firstRows [i + 1] - r)) * words, words);
+				}
+				out.flush ();
+			}
+			for (int i = 0; i < shards; i++)
+			{
+				population += ins [i].readInt ();
+				hash ^= Colony.hashWord (ins [i].readLong (), i); // (bands hash their cells the same wherever they are, so mix in which band)
+			}
+		}
+		catch (IOException e)
+		{
+			close ();
+			throw e;
+		}
+	}
+
+	// Start a worker process on this machine with the same Java and classpath, and return where it is listening
+	private InetSocketAddress start (int shard, int threads) throws IOException
+	{
+		ProcessBuilder builder = new ProcessBuilder (System.getProperty ("java.home") + File.separator + "bin" + File.separator + "java",
+				"-cp", System.getProperty ("java.class.path"), "ShardWorker", "0", Integer.toString (threads), "once");
+		builder.redirectError (ProcessBuilder.Redirect.INHERIT); // (so its errors show up with the driver's)
+		processes [shard] = builder.start ();
+		String line = new BufferedReader (new InputStreamReader (processes [shard].getInputStream (), "US-ASCII")).readLine ();
+		if (line == null || !line.startsWith ("Listening on port "))
+			throw new IOException ("Worker " + shard + " didn't start");
+		return new InetSocketAddress ("localhost", Integer.parseInt (line.substring (line.lastIndexOf (' ') + 1)));
+	}
+
+	// Advance the colony a generation: send every worker its halo, then collect what they send back
+	public void advance () throws IOException
+	{
+		long start = System.nanoTime ();
+		int shards = sockets.length;
+		for (int i = 0; i < shards; i++)
+		{
+			DataOutputStream out = outs [i];
+			out.write (ShardWorker.STEP);
+			write (out, i > 0 ? bottoms [i - 1] : topology.wrapsRows () ? bottoms [shards - 1] : null, i == 0);
+			write (out, i < shards - 1 ? tops [i + 1] : topology.wrapsRows () ? tops [0] : null, i == shards - 1);
+			out.flush ();
+		}
+
+		population = births = deaths = hash = 0;
+		for (int i = 0; i < shards; i++)
+		{
+			DataInputStream in = ins [i];
+			long nanos = in.readLong ();
+			stepNanos [i] += nanos;
+			maxNanos [i] = Math.max (maxNanos [i], nanos);
+			population += in.readInt ();
+			births += in.readInt ();
+			deaths += in.readInt ();
+			hash ^= Colony.hashWord (in.readLong (), i);
+			for (int j = 0; j < tops [i].length; j++)
+				tops [i] [j] = in.readLong ();
+			for (int j = 0; j < bottoms [i].length; j++)
+				bottoms [i] [j] = in.readLong ();
+		}
+		generations++;
+		roundNanos += System.nanoTime () - start;
+	}
+
+	// Send a halo: the rows of another band, or empty rows if there is nothing past the edge of the colony. Rows
+	// that come round from the far edge of a Klein bottle are flipped left to right
+	private void write (DataOutputStream out, long[] edge, boolean crossesEdge) throws IOException
+	{
+		for (int row = 0; row < halo; row++)
+		{
+			for (int w = 0; w < words; w++)
+			{
+				long word = 0;
+				if (edge != null && crossesEdge && topology.flipsRows ())
+				{
+					for (int j = 0; j < 64 && w * 64 + j < columns; j++)
+					{
+						int column = columns - 1 - (w * 64 + j);
+						word |= ((edge [row * words + column / 64] >>> (column % 64)) & 1) << j;
+					}
+				}
+				else if (edge != null)
+					word = edge [row * words + w];
+				out.writeLong (word);
+			}
+		}
+	}
+
+	// Returns the whole colony, fetched from the workers (it has to fit in this JVM)
+	public Colony gather () throws IOException
+	{
+		Colony colony = new Colony (rows, columns, 0, 0);
+		colony.setRule (rule);
+		colony.setTopology (topology);
+		for (int i = 0; i < sockets.length; i++)
+		{
+			outs [i].write (ShardWorker.GET);
+			outs [i].flush ();
+		}
+		for (int i = 0; i < sockets.length; i++)
+			for (int row = firstRows [i]; row < firstRows [i + 1]; row++)
+				for (int w = 0; w < words; w++)
+					colony.setWord (row, w, ins [i].readLong ());
+		return colony;
+	}
+
+	// Tell the workers to stop and close the connections, ending any workers the driver started
+	public void close ()
+	{
+		for (int i = 0; i < sockets.length; i++)
+		{
+			try
+			{
+				if (outs [i] != null)
+				{
+					outs [i].write (ShardWorker.QUIT);
+					outs [i].flush ();
+				}
+				if (sockets [i] != null)
+					sockets [i].close ();
+			}
+			catch (IOException e) // already gone
+			{
+				// nothing to tell
+			}
+			if (processes [i] != null)
+			{
+				try
+				{
+					processes [i].waitFor ();
+				}
+				catch (InterruptedException e)
+				{
+					processes [i].destroy ();
+				}
+			}
+		}
+	}
+
+	// Returns the number of live cells, and the cells born and died last generation
+	public long getCellNum ()
+	{
+		return population;
+	}
+
+	public long getBirths ()
+	{
+		return births;
+	}
+
+	public long getDeaths ()
+	{
+		return deaths;
+	}
+
+	// Returns a hash of the cells (the same cells split into the same bands have the same hash, though not the
+	// same one as Colony's)
+	public long getHash ()
+	{
+		return hash;
+	}
+
+	// Getter methods for the size of the colony, its rule, and the number of shards it is split into
+	public int getRows ()
+	{
+		return rows;
+	}
+
+	public int getColumns ()
+	{
+		return columns;
+	}
+
+	public Rule getRule ()
+	{
+		return rule;
+	}
+
+	public int getShards ()
+	{
+		return sockets.length;
+	}
+
+	// Returns the first row of a shard's band and the number of rows in it
+	public int getFirstRow (int shard)
+	{
+		return firstRows [shard];
+	}
+
+	public int getShardRows (int shard)
+	{
+		return firstRows [shard + 1] - firstRows [shard];
+	}
+
+	// Returns the time in nanoseconds a shard has spent stepping its band, altogether and for its longest generation
+	public long getStepNanos (int shard)
+	{
+		return stepNanos [shard];
+	}
+
+	public long getMaxStepNanos (int shard)
+	{
+		return maxNanos [shard];
+	}
+
+	// Returns the time in nanoseconds the generations took from sending the halos to the last worker's reply
+	public long getRoundNanos ()
+	{
+		return roundNanos;
+	}
+
+	// Returns how the shards have been doing, a line each: the mean time each took to step its band, and how much
+	// longer than the mean of all of them that is (every generation waits for the slowest), then the time spent
+	// waiting on the network and the driver
+	public String report ()
+	{
+		StringBuilder text = new StringBuilder ();
+		long n = Math.max (1, generations), slowest = 0, total = 0;
+		for (int i = 0; i < stepNanos.length; i++)
+		{
+			slowest = Math.max (slowest, stepNanos [i]);
+			total += stepNanos [i];
+		}
+		double mean = (double) total / stepNanos.length;
+		for (int i = 0; i < stepNanos.length; i++)
+			text.append (String.format ("Shard %d (rows %d to %d): step mean %.4f ms, longest %.4f ms, %+.1f%% on the mean%n", i,
+					firstRows [i], firstRows [i + 1] - 1, stepNanos [i] / 1e6 / n, maxNanos [i] / 1e6, mean > 0 ? (stepNanos [i] / mean - 1) * 100 : 0.0));
+		text.append (String.format ("Generation mean %.4f ms, of which %.4f ms not stepping the slowest shard (halo exchange)%n",
+				roundNanos / 1e6 / n, (roundNanos - slowest) / 1e6 / n));
+		return text.toString ();
+	}
+}
@@ -0,0 +1,170 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ForkJoinPool;
+
+// One worker process of a sharded simulation (see ShardDriver). It holds a band of rows of the colony as a Colony
+// with the halo (the rows just above and below the band, which belong to the bands next to it) added above and
+// below. The driver copies the halo in before every generation, so the band's own rows come out exactly as they
+// would in the whole colony; the halo rows themselves come out wrong, but are replaced before they are used again.
+// Start one on each machine with
+//
+//   java ShardWorker port [threads]
+//
+// (port 0 picks a free port). It prints the port it is listening on, then runs shards for one driver after another.
+// It listens on every network interface and does whatever anyone who connects tells it, with no authentication, so
+// only run it on a network where nothing else can reach the port
+public class ShardWorker
+{
+	// Commands sent by the driver
+	static final int LOAD = 1, STEP = 2, GET = 3, QUIT = 4;
+
+	private final int threads; // threads the band is stepped on
+	private Colony colony; // the band, with the halo above and below it
+	private int rows, words, halo; // rows in the band, longs in each row, and rows in the halo on each side
+	private long[] haloBefore; // the halo as the driver sent it this generation (rows above the band, then rows below)
+
+	// Constructor
+	ShardWorker (int threads)
+	{
+		this.threads = threads;
+	}
+
+	// Main method
+	public static void main (String[] args) throws IOException
+	{
+		if (args.length < 1)
+		{
+			System.err.println ("Usage: ShardWorker port [threads]");
+			System.exit (1);
+		}
+		int threads = args.length > 1 ? Integer.parseInt (args [1]) : Runtime.getRuntime ().availableProcessors ();
+		boolean once = args.length > 2 && args [2].equals ("once"); // (started by a driver, just for it)
+
+		ServerSocket server = new ServerSocket (Integer.parseInt (args [0]));
+		System.out.println ("Listening on port " + server.getLocalPort ());
+		System.out.flush (); // (a driver that started this process is waiting to read it)
+		do
+		{
+			Socket socket = server.accept ();
+			try
+			{
+				new ShardWorker (threads).serve (socket);
+			}
+			catch (IOException e) // lost the driver; wait for the next one
+			{
+				e.printStackTrace (); // help diagnose problem
+			}
+			finally
+			{
+				socket.close ();
+			}
+		}
+		while (!once);
+		server.close ();
+		System.exit (0); // (the colony's threads would keep the process running)
+	}
+
+	// Carry out a driver's commands until it is done
+	void serve (Socket socket) throws IOException
+	{
+		socket.setTcpNoDelay (true); // replies are small and the driver is waiting for them
+		DataInputStream in = new DataInputStream (new BufferedInputStream (socket.getInputStream (), 1 << 16));
+		DataOutputStream out = new DataOutputStream (new BufferedOutputStream (socket.getOutputStream (), 1 << 16));
+		for (int command; (command = in.read ()) != -1 && command != QUIT; )
+		{
+			if (command == LOAD)
+			{
+				load (in);
+				out.writeInt (colony.getCellNum ()); // (the halo is empty, so these are just the band's)
+				out.writeLong (colony.getHash ());
+			}
+			else if (command == STEP)
+				step (in, out);
+			else if (command == GET)
+				for (int row = halo; row < halo + rows; row++)
+					for (int w = 0; w < words; w++)
+						out.writeLong (colony.getWord (row, w));
+			else
+				throw new IOException ("Unknown command " + command);
+			out.flush ();
+		}
+	}
+
+	// Take on a band: its size, the rule, whether the columns wrap round, and its cells (replying with its population
+	// and hash). The halo is as deep as the rule's radius, and the band's colony only wraps its columns round (if the
+	// whole colony does): what is past its top and bottom comes from the halo
+	private void load (DataInputStream in) throws IOException
+	{
+		rows = in.readInt ();
+		int columns = in.readInt ();
+		Rule rule = Rule.parse (in.readUTF ());
+		boolean wrapsColumns = in.readBoolean ();
+		halo = rule.getRadius ();
+		colony = new Colony (rows + 2 * halo, columns, 0, 0);
+		colony.setRule (rule);
+		colony.setTopology (wrapsColumns ? Topology.CYLINDER : Topology.DEAD);
+		if (threads > 1)
+			colony.setExecutor (new ForkJoinPool (threads), threads * 4); // a few bands per thread so they finish together
+		words = colony.getWords ();
+		for (int row = halo; row < halo + rows; row++)
+			for (int w = 0; w < words; w++)
+				colony.setWord (row, w, in.readLong ());
+		haloBefore = new long [2 * halo * words];
+	}
+
+	// Advance the band a generation, given the halo. Replies with the time taken, the band's population, births,
+	// deaths and hash (leaving the halo out), then the rows at its top and bottom edges that are the halo of the
+	// bands next to it
+	private void step (DataInputStream in, DataOutputStream out) throws IOException
+	{
+		for (int i = 0; i < haloBefore.length; i++)
+		{
+			haloBefore [i] = in.readLong ();
+			colony.setWord (haloRow (i / words), i % words, haloBefore [i]);
+		}
+
+		long start = System.nanoTime ();
+		colony.advance ();
+		long nanos = System.nanoTime () - start;
+
+		// Take the halo's part out of the colony's counts and hash. Putting each word of it back in first stops its
+		// cells dying (under Generations rules), which takes them out of the hash; they are replaced next generation
+		// anyway, and only live cells count as neighbours
+		for (int i = 0; i < haloBefore.length; i++)
+			colony.setWord (haloRow (i / words), i % words, colony.getWord (haloRow (i / words), i % words));
+		int population = colony.getCellNum (), births = colony.getBirths (), deaths = colony.getDeaths ();
+		long hash = colony.getHash ();
+		for (int i = 0; i < haloBefore.length; i++)
+		{
+			int row = haloRow (i / words), w = i % words;
+			long before = haloBefore [i], after = colony.getWord (row, w);
+			population -= Long.bitCount (after);
+			births -= Long.bitCount (after & ~before);
+			deaths -= Long.bitCount (before & ~after);
+			hash ^= Colony.hashWord (after, (long) row * words + w);
+		}
+
+		out.writeLong (nanos);
+		out.writeInt (population);
+		out.writeInt (births);
+		out.writeInt (deaths);
+		out.writeLong (hash);
+		for (int row = halo; row < 2 * halo; row++) // top edge of the band
+			for (int w = 0; w < words; w++)
+				out.writeLong (colony.getWord (row, w));
+		for (int row = rows; row < rows + halo; row++) // bottom edge
+			for (int w = 0; w < words; w++)
+				out.writeLong (colony.getWord (row, w));
+	}
+
+	// Returns the row of the colony that the nth row of the halo is in (the rows above the band, then the rows below it)
+	private int haloRow (int n)
+	{
+		return n < halo ? n : rows + n;
+	}
+}
@@ -0,0 +1,317 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+// Advances a colony on a thread of its own, so stepping never waits for the window to draw and drawing never waits
+// for a step. Anything that changes the colony is queued and done on the simulation thread between generations.
+// The window only ever sees snapshots, which are handed over through an AtomicReference without any locking.
+// Past generations of a Colony are kept in a History so the colony can be stepped back, and each generation is
+// timed by Metrics
+class Simulation implements Runnable
+{
+	// A change to the colony, made on the simulation thread
+	interface Edit
+	{
+		void apply (Board colony);
+	}
+
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable> (); // changes waiting to be made
+	private final AtomicReference<Snapshot> latest = new AtomicReference<Snapshot> (); // newest snapshot
+	private final AtomicBoolean wanted = new AtomicBoolean (true); // the window has taken the newest snapshot
+	private final Thread thread = new Thread (this, "Simulation");
+	private final long historyBytes; // memory the history of a colony can use
+	private volatile Runnable listener; // told (on the simulation thread) whenever there is a new snapshot
+	private final Metrics metrics = new Metrics (); // how fast generations are stepped (and frames drawn)
+
+	// Only used on the simulation thread
+	private Board colony;
+	private long generation;
+	private boolean running;
+	private long delay; // nanoseconds between generations while running (0 for as fast as possible)
+	private long nextStep; // when the next generation is due (System.nanoTime)
+	private CycleDetector cycles = new CycleDetector (); // spots the colony repeating itself
+	private boolean stopOnCycle; // stop running once the colony repeats itself
+	private History history; // past generations (null for boards other than Colony, which aren't remembered)
+
+	// Constructor that lets the history use an eighth of the memory Java can use
+	Simulation (long delayMillis)
+	{
+		this (delayMillis, Runtime.getRuntime ().maxMemory () / 8);
+	}
+
+	// Constructor; the simulation has nothing to run until it is given a colony
+	Simulation (long delayMillis, long historyBytes)
+	{
+		delay = delayMillis * 1000000;
+		this.historyBytes = historyBytes;
+		thread.setDaemon (true); // don't keep the program running once the window is closed
+		thread.start ();
+	}
+
+	// Setter method for what to tell when there is a new snapshot (called on the simulation thread)
+	void setListener (Runnable listener)
+	{
+		this.listener = listener;
+	}
+
+	// Getter method for the measurements of how the simulation is running
+	Metrics getMetrics ()
+	{
+		return metrics;
+	}
+
+	// Returns the newest snapshot of the colony (null until the simulation thread has taken over the first colony)
+	Snapshot latest ()
+	{
+		wanted.set (true); // ready for the next one
+		return latest.get ();
+	}
+
+	// Replace the colony with a new one, starting again from generation 0. The old one is drawn until the simulation
+	// thread has taken the new one over and made a snapshot of it
+	void setColony (final Board newColony)
+	{
+		submit (new Runnable ()
+		{
+			public void run ()
+			{
+				colony = newColony;
+				generation = 0;
+				metrics.reset (); // (a different colony steps at a different speed)
+				history = colony instanceof Colony && historyBytes > 0 ? new History (historyBytes) : null;
+				watchCycles ();
+				remember ();
+			}
+		});
+	}
+
+	// Change the colony (changes are made in the order they are asked for)
+	void edit (final Edit edit)
+	{
+		submit (new Runnable ()
+		{
+			public void run ()
+			{
+				if (colony != null)
+				{
+					long before = colony.getHash ();
+					edit.apply (colony);
+					if (colony.getHash () != before) // cells changed, so any cycle found so far is over
+					{
+						watchCycles ();
+						remember (); // (so the change can be undone by stepping back)
+					}
+				}
+			}
+		});
+	}
+
+	// Set generation number back to 0
+	void restart ()
+	{
+		submit (new Runnable ()
+		{
+			public void run ()
+			{
+				generation = 0;
+				watchCycles ();
+				if (history != null) // generation numbers start again
+					history.clear ();
+				remember ();
+			}
+		});
+	}
+
+	// Go back a generation (or undo the last edit), stopping if running. Advancing or editing from there carries on
+	// from that generation, forgetting the ones that came after it
+	void back ()
+	{
+		submit (new Runnable ()
+		{
+			public void run ()
+			{
+				if (history != null && history.back ((Colony) colony))
+					rewound ();
+			}
+		});
+	}
+
+	// Go to a generation that is still remembered, stopping if running
+	void scrub (final long toGeneration)
+	{
+		submit (new Runnable ()
+		{
+			public void run ()
+			{
+				if (history != null && history.scrub (toGeneration, (Colony) colony))
+					rewound ();
+			}
+		});
+	}
+
+	// Advance one generation (if there are any cells left)
+	void step ()
+	{
+		submit (new Runnable ()
+		{
+			public void run ()
+			{
+				advance ();
+			}
+		});
+	}
+
+	// Start advancing a generation every delay, until paused or there are no cells left
+	void play ()
+	{
+		submit (new Runnable ()
+		{
+			public void run ()
+			{
+				running = colony != null;
+				nextStep = System.nanoTime ();
+			}
+		});
+	}
+
+	// Stop advancing
+	void pause ()
+	{
+		submit (new Runnable ()
+		{
+			public void run ()
+			{
+				running = false;
+			}
+		});
+	}
+
+	// Setter method for the time between generations while running (0 for as fast as possible)
+	void setDelay (final long delayMillis)
+	{
+		submit (new Runnable ()
+		{
+			public void run ()
+			{
+				delay = delayMillis * 1000000;
+				nextStep = Math.min (nextStep, System.nanoTime () + delay); // don't wait out a longer delay
+			}
+		});
+	}
+
+	// Setter method for whether to stop running once the colony starts repeating itself
+	void setStopOnCycle (final boolean stop)
+	{
+		submit (new Runnable ()
+		{
+			public void run ()
+			{
+				stopOnCycle = stop;
+			}
+		});
+	}
+
+	// Queue a change and wake the simulation thread to make it
+	private void submit (Runnable task)
+	{
+		tasks.add (task);
+		LockSupport.unpark (thread);
+	}
+
+	// Simulation thread: make changes, advance when it's time, and hand snapshots over
+	public void run ()
+	{
+		while (true)
+		{
+			boolean changed = false;
+			for (Runnable task; (task = tasks.poll ()) != null; changed = true)
+			{
+				try
+				{
+					task.run ();
+				}
+				catch (RuntimeException e) // a bad change shouldn't stop the simulation
+				{
+					e.printStackTrace (); // help diagnose problem
+				}
+			}
+
+			boolean stepped = false;
+			long now = System.nanoTime ();
+			if (running && now - nextStep >= 0) // time for the next generation
+			{
+				try
+				{
+					advance ();
+				}
+				catch (RuntimeException e) // a colony that can't be stepped shouldn't stop the simulation; just stop running
+				{
+					e.printStackTrace (); // help diagnose problem
+					running = false;
+				}
+				nextStep = Math.max (nextStep + delay, now); // don't rush to catch up after falling behind
+				stepped = true;
+			}
+
+			// At full speed, only copy the colony once the window has taken the last copy
+			if (colony != null && (changed || (stepped && (delay > 0 || !running || wanted.getAndSet (false)))))
+			{
+				latest.set (new Snapshot (colony, generation, cycles, history));
+				Runnable listener = this.listener;
+				if (listener != null)
+					listener.run ();
+			}
+
+			// Wait for a change or the next generation
+			if (!running)
+				LockSupport.park (this);
+			else if (nextStep - System.nanoTime () > 0)
+				LockSupport.parkNanos (this, nextStep - System.nanoTime ());
+		}
+	}
+
+	// Advance the colony a generation, stopping once there are no cells left
+	private void advance ()
+	{
+		if (colony != null && colony.anyCellsLeft ())
+		{
+			metrics.stepping ();
+			long start = System.nanoTime (), allocated = Metrics.allocated ();
+			colony.advance ();
+			generation++;
+			metrics.stepped (generation, System.nanoTime () - start, (long) colony.getRows () * colony.getColumns (), Metrics.allocated () - allocated); // (just the step, not the history or the cycle detector)
+			remember ();
+			if (cycles.add (colony, generation) && stopOnCycle) // repeating; nothing new will happen
+				running = false;
+		}
+		if (colony == null || !colony.anyCellsLeft ()) // no cells left; stop
+			running = false;
+	}
+
+	// Start looking for cycles again from the colony as it is now
+	private void watchCycles ()
+	{
+		cycles.reset ();
+		if (colony != null)
+			cycles.add (colony, generation);
+	}
+
+	// Add the colony as it is now to the history (which can't hold dying cells, so is dropped under Generations rules)
+	private void remember ()
+	{
+		if (history != null && colony.getRule ().getStates () > 2)
+			history.clear ();
+		else if (history != null)
+			history.record ((Colony) colony, generation);
+	}
+
+	// The colony has been taken back to a generation in the history
+	private void rewound ()
+	{
+		generation = history.getGeneration ();
+		running = false;
+		watchCycles ();
+	}
+}
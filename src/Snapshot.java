@@ -0,0 +1,59 @@
+// A copy of a colony as it was at one generation, for drawing. Snapshots never change once made, so the window
+// can draw one while the simulation thread carries on advancing the colony
+final class Snapshot
+{
+	final int rows, columns, words; // size of colony and number of longs in each row
+	final long[] cells; // 64 cells per long, row by row (bit j of word w holds column w * 64 + j, like Colony)
+	final long generation;
+	final int population, births, deaths; // number of cells, and cells born and died last generation
+	final long period, onset; // how often the colony repeats itself, and from which generation (0 and -1 if it doesn't)
+	final long oldest, newest; // generations that can be gone back to (-1 if there is no history)
+	final Rule rule; // rule the colony follows
+	final long colonyId, version; // which Colony it is a copy of, and the version it was at (see Colony.getTileVersions)
+	final long[] tileVersions; // version each of the Colony's tiles last changed at (null for other boards)
+
+	// Constructor that copies a colony
+	Snapshot (Board colony, long generation)
+	{
+		this (colony, generation, null, null);
+	}
+
+	// Constructor that copies a colony along with what is known about its cycles and history (either may be null)
+	Snapshot (Board colony, long generation, CycleDetector cycles, History history)
+	{
+		rows = colony.getRows ();
+		columns = colony.getColumns ();
+		words = (columns + 63) >>> 6;
+		if (colony instanceof Colony) // same layout; copy it whole
+		{
+			cells = ((Colony) colony).getCells ();
+			colonyId = ((Colony) colony).getId ();
+			version = ((Colony) colony).getVersion ();
+			tileVersions = ((Colony) colony).getTileVersions ();
+		}
+		else
+		{
+			cells = new long [rows * words];
+			for (int row = 0; row < rows; row++)
+				for (int col = colony.nextAlive (row, 0); col != -1; col = colony.nextAlive (row, col + 1))
+					cells [row * words + (col >>> 6)] |= 1L << col;
+			colonyId = version = -1;
+			tileVersions = null;
+		}
+		this.generation = generation;
+		population = colony.getCellNum ();
+		births = colony.getBirths ();
+		deaths = colony.getDeaths ();
+		period = cycles == null ? 0 : cycles.getPeriod ();
+		onset = cycles == null ? -1 : cycles.getOnset ();
+		rule = colony.getRule ();
+		oldest = history == null ? -1 : history.getOldest ();
+		newest = history == null ? -1 : history.getNewest ();
+	}
+
+	// Checks if there is a cell at a location
+	boolean isAlive (int row, int column)
+	{
+		return (cells [row * words + (column >>> 6)] & (1L << column)) != 0;
+	}
+}
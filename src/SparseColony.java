@@ -0,0 +1,277 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// A colony on a plane with no edges. Only 64 * 64 chunks of the plane that have cells in them are stored
+// (one long per row of a chunk), so memory depends on the population rather than on how far the cells spread.
+// Rows and columns are a window onto the plane, which is what gets shown and edited
+public class SparseColony implements Board
+{
+	private Map<Long, long[]> chunks = new HashMap<Long, long[]> (); // chunks with cells in them, by chunk coordinates
+	private int rows, columns; // size of the window
+	private int originRow, originColumn; // where the top left corner of the window is on the plane
+	private int population, births, deaths; // number of cells on the plane, and cells born and died last generation
+	private long hash; // hash of the cells on the plane (rows of chunks hashed like Colony's words)
+	private double popEradRate; // how successful population/eradication the marquee tool is for population/eradication
+	private Rule rule = Rule.LIFE; // which cells are born and survive
+
+	// Constructor
+	public SparseColony (int rows, int columns, double density, double popEradRate)
+	{
+		if (rows < 1 || columns < 1)
+			throw new IllegalArgumentException ("Window can't be " + rows + " by " + columns);
+		this.rows = rows;
+		this.columns = columns;
+		this.popEradRate = popEradRate;
+
+		// Fill window with cells/spaces
+		if (density > 0)
+			for (int row = 0; row < rows; row++) // go through window with nested for loop
+				for (int col = 0; col < columns; col++)
+					if (Math.random () < density) // if the float returned is less than the density, put in a cell
+						setCell (row, col, true);
+	}
+
+	// Getter methods for the size of the window
+	public int getRows ()
+	{
+		return rows;
+	}
+
+	public int getColumns ()
+	{
+		return columns;
+	}
+
+	// Move the window so its top left corner is at (row, column) on the plane
+	public void setOrigin (int row, int column)
+	{
+		originRow = row;
+		originColumn = column;
+	}
+
+	// Getter methods for where the window is on the plane
+	public int getOriginRow ()
+	{
+		return originRow;
+	}
+
+	public int getOriginColumn ()
+	{
+		return originColumn;
+	}
+
+	// Getter method for the number of chunks being stored
+	public int getChunkNum ()
+	{
+		return chunks.size ();
+	}
+
+	// Setter method for population/eradication rate
+	public void setPopEradRate (double popEradRate)
+	{
+		this.popEradRate = popEradRate;
+	}
+
+	// Getter method for the rule the plane follows
+	public Rule getRule ()
+	{
+		return rule;
+	}
+
+	// Setter method for the rule the plane follows. Only two state rules that count the eight cells around each cell
+	// work on an endless plane, and not ones where cells are born with no neighbours (the whole plane would fill up)
+	public void setRule (Rule rule)
+	{
+		if (rule.getRadius () != 1 || rule.getStates () != 2 || rule.isBornAlone ())
+			throw new IllegalArgumentException ("An unbounded colony can't follow " + rule);
+		this.rule = rule;
+	}
+
+	// Returns the key of the chunk at chunk coordinates (chunk row, chunk column)
+	private static Long key (int chunkRow, int chunkColumn)
+	{
+		return ((long) chunkRow << 32) | (chunkColumn & 0xFFFFFFFFL);
+	}
+
+	// Checks if there is a cell at a location in the window
+	public boolean isAlive (int row, int column)
+	{
+		int y = originRow + row, x = originColumn + column; // location on the plane
+		long[] chunk = chunks.get (key (y >> 6, x >> 6)); // >> rounds down, so negative locations work too
+		return chunk != null && (chunk [y & 63] & (1L << x)) != 0;
+	}
+
+	// Returns the column of the first cell in a row of the window at or after a column, or -1 if there isn't one
+	public int nextAlive (int row, int column)
+	{
+		int y = originRow + row;
+		for (int x = originColumn + column; x < originColumn + columns; x = (x | 63) + 1) // one chunk at a time
+		{
+			long[] chunk = chunks.get (key (y >> 6, x >> 6));
+			long word = chunk == null ? 0 : chunk [y & 63] & (-1L << x); // ignore cells before x
+			if (word != 0)
+			{
+				int found = (x & ~63) + Long.numberOfTrailingZeros (word) - originColumn;
+				return found < columns ? found : -1;
+			}
+		}
+		return -1;
+	}
+
+	// Puts a cell into (or removes a cell from) a location in the window
+	public void setCell (int row, int column, boolean alive)
+	{
+		int y = originRow + row, x = originColumn + column; // location on the plane
+		Long key = key (y >> 6, x >> 6);
+		long[] chunk = chunks.get (key);
+		if (chunk == null)
+		{
+			if (!alive) // nothing to remove
+				return;
+			chunk = new long [64];
+			chunks.put (key, chunk);
+		}
+
+		long before = chunk [y & 63];
+		if (alive)
+			chunk [y & 63] |= 1L << x;
+		else
+			chunk [y & 63] &= ~(1L << x);
+		population += Long.bitCount (chunk [y & 63]) - Long.bitCount (before);
+		hash ^= Colony.hashWord (before, key * 64 + (y & 63)) ^ Colony.hashWord (chunk [y & 63], key * 64 + (y & 63));
+	}
+
+	// Returns number of cells on the plane
+	public int getCellNum ()
+	{
+		return population;
+	}
+
+	// Returns number of cells born last generation
+	public int getBirths ()
+	{
+		return births;
+	}
+
+	// Returns number of cells that died last generation
+	public int getDeaths ()
+	{
+		return deaths;
+	}
+
+	// Returns a hash of the cells on the plane, kept up to date as they change
+	public long getHash ()
+	{
+		return hash;
+	}
+
+	// Checks if there are any cells left on the plane
+	public boolean anyCellsLeft ()
+	{
+		return population > 0;
+	}
+
+	// Add cells to an area of the window
+	public void populate (int x1, int x2, int y1, int y2)
+	{
+		for (int i = y1; i <= y2; i++)
+			for (int j = x1; j <= x2; j++)
+				if (!isAlive (i, j)) // if the location does not have a cell
+					setCell (i, j, Math.random () * 100 < popEradRate);
+	}
+
+	// Delete cells in an area of the window
+	public void eradicate (int x1, int x2, int y1, int y2)
+	{
+		for (int i = y1; i <= y2; i++)
+			for (int j = x1; j <= x2; j++)
+				if (isAlive (i, j)) // if the location contains a cell
+					setCell (i, j, Math.random () * 100 > popEradRate);
+	}
+
+	// Populates one square (for freestyle population)
+	public void populateOne (int y, int x)
+	{
+		setCell (x, y, true);
+	}
+
+	// Remove every cell from the plane
+	public void clear ()
+	{
+		chunks.clear ();
+		population = 0;
+		hash = 0;
+	}
+
+	// Copy a colony's cells into the window with its top left corner at (row, column)
+	public void place (Colony pattern, int row, int column)
+	{
+		for (int i = 0; i < pattern.getRows (); i++)
+			for (int j = 0; j < pattern.getColumns (); j++)
+				if (pattern.isAlive (i, j))
+					setCell (i + row, j + column, true);
+	}
+
+	// Produce next generation of cells on the plane
+	public void advance ()
+	{
+		// Any chunk with cells, or next to a chunk with cells, can have cells next generation
+		Map<Long, long[]> next = new HashMap<Long, long[]> ();
+		births = 0;
+		deaths = 0;
+		for (Long key : chunks.keySet ())
+		{
+			int chunkRow = (int) (key >> 32), chunkColumn = (int) (long) key;
+			for (int i = chunkRow - 1; i <= chunkRow + 1; i++)
+				for (int j = chunkColumn - 1; j <= chunkColumn + 1; j++)
+				{
+					Long nextKey = key (i, j);
+					if (next.containsKey (nextKey)) // already worked out
+						continue;
+					long[] chunk = advanceChunk (i, j);
+					next.put (nextKey, chunk); // empty chunks are stored as null so they aren't worked out twice
+				}
+		}
+
+		next.values ().removeAll (Collections.singleton (null)); // drop the chunks that ended up empty
+		chunks = next;
+		population += births - deaths;
+	}
+
+	// Determine the new generation of one chunk from it and the eight chunks around it, counting its births and
+	// deaths; returns null if it is empty
+	private long[] advanceChunk (int chunkRow, int chunkColumn)
+	{
+		long[] nw = chunks.get (key (chunkRow - 1, chunkColumn - 1)), n = chunks.get (key (chunkRow - 1, chunkColumn)), ne = chunks.get (key (chunkRow - 1, chunkColumn + 1));
+		long[] w = chunks.get (key (chunkRow, chunkColumn - 1)), c = chunks.get (key (chunkRow, chunkColumn)), e = chunks.get (key (chunkRow, chunkColumn + 1));
+		long[] sw = chunks.get (key (chunkRow + 1, chunkColumn - 1)), s = chunks.get (key (chunkRow + 1, chunkColumn)), se = chunks.get (key (chunkRow + 1, chunkColumn + 1));
+
+		long[] result = new long [64];
+		boolean anyCells = false;
+		long index = key (chunkRow, chunkColumn) * 64; // hash index of the chunk's first row
+		for (int row = 0; row < 64; row++)
+		{
+			// Words above and below come from the chunks above and below at the top and bottom rows
+			long a0 = row > 0 ? word (w, row - 1) : word (nw, 63), a1 = row > 0 ? word (c, row - 1) : word (n, 63), a2 = row > 0 ? word (e, row - 1) : word (ne, 63);
+			long b0 = row < 63 ? word (w, row + 1) : word (sw, 0), b1 = row < 63 ? word (c, row + 1) : word (s, 0), b2 = row < 63 ? word (e, row + 1) : word (se, 0);
+			long before = word (c, row);
+			if (rule.isLife ())
+				result [row] = Colony.nextWord (a0, a1, a2, word (w, row), before, word (e, row), b0, b1, b2);
+			else
+				result [row] = rule.nextWord (a0, a1, a2, word (w, row), before, word (e, row), b0, b1, b2, 0);
+			births += Long.bitCount (result [row] & ~before);
+			deaths += Long.bitCount (before & ~result [row]);
+			if (result [row] != before)
+				hash ^= Colony.hashWord (before, index + row) ^ Colony.hashWord (result [row], index + row);
+			anyCells |= result [row] != 0;
+		}
+		return anyCells ? result : null;
+	}
+
+	// Returns one row of a chunk (0 if the chunk isn't stored)
+	private static long word (long[] chunk, int row)
+	{
+		return chunk == null ? 0 : chunk [row];
+	}
+}
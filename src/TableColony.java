@@ -0,0 +1,271 @@
+import java.util.Arrays;
+
+// A bounded colony that is stepped by looking up blocks in a table instead of counting neighbours. The cells are
+// stored in 2 * 2 blocks (one byte each, bit 0 top left, bit 1 top right, bit 2 bottom left, bit 3 bottom right).
+// Four blocks make a 4 * 4 square, and the 2 * 2 block in its middle next generation only depends on those 16
+// cells, so the table holds it for all 65536 squares. The middle blocks are offset a cell down and right from the
+// blocks they came from, so the blocks line up with the colony one generation and are a cell up and left of it
+// the next (the phase), with a margin of dead blocks past the edges to read from
+public class TableColony implements Board
+{
+	private int rows, columns; // size of colony
+	private int width; // number of blocks in each row of the grids, including the margins
+	private byte[] blocks, next; // the cells, and a spare grid the new generation is written into
+	private int phase; // 0 if the blocks line up with the colony, 1 if they start a cell up and left of it
+	private int[][] columnMasks; // bits of each block in a row that are inside the colony, for each phase
+	private byte[] table; // next generation of the middle block of each square (low 4 bits) and the middle block now (high 4 bits)
+	private int population, births, deaths; // number of cells, and cells born and died last generation
+	private long hash; // hash of the cells (the cells' parts XORed together; see hashCell)
+	private double popEradRate; // how successful population/eradication the marquee tool is for population/eradication
+	private Rule rule = Rule.LIFE; // which cells are born and survive
+
+	private static final byte[] LIFE_TABLE = buildTable (Rule.LIFE);
+
+	// Constructor
+	public TableColony (int rows, int columns, double density, double popEradRate)
+	{
+		if (rows < 1 || columns < 1 || ((long) (rows >> 1) + 3) * ((columns >> 1) + 3) > Integer.MAX_VALUE)
+			throw new IllegalArgumentException ("Colony can't be " + rows + " by " + columns);
+		this.rows = rows;
+		this.columns = columns;
+		this.popEradRate = popEradRate;
+		width = (columns >> 1) + 3; // (enough for both phases, plus a margin block on each side)
+		blocks = new byte [((rows >> 1) + 3) * width];
+		next = new byte [blocks.length];
+		table = LIFE_TABLE;
+		columnMasks = new int [2][width];
+		for (int p = 0; p < 2; p++)
+			for (int b = 0; b < width - 2; b++)
+				columnMasks [p] [b] = (isInside (2 * b - p, columns) ? 5 : 0) | (isInside (2 * b - p + 1, columns) ? 10 : 0);
+
+		// Fill with cells/spaces
+		if (density > 0)
+			for (int row = 0; row < rows; row++) // go through colony with nested for loop
+				for (int col = 0; col < columns; col++)
+					if (Math.random () < density) // if the float returned is less than the density, put in a cell
+						setCell (row, col, true);
+	}
+
+	// Checks if a row or column is inside a colony n cells long
+	private static boolean isInside (int i, int n)
+	{
+		return i >= 0 && i < n;
+	}
+
+	// Works out the table for a rule: the next generation of the middle 2 * 2 block of every 4 * 4 square. Squares
+	// are numbered by their four blocks (top left, top right, bottom left and bottom right, 4 bits each)
+	private static byte[] buildTable (Rule rule)
+	{
+		byte[] table = new byte [65536];
+		for (int square = 0; square < 65536; square++)
+		{
+			// Lay the square out as four rows of 4 cells, so the rule can step its middle rows like any other cells
+			long[] row = new long [4];
+			for (int block = 0; block < 4; block++)
+				for (int bit = 0; bit < 4; bit++)
+					if ((square & (1 << (block * 4 + bit))) != 0)
+						row [(block >> 1) * 2 + (bit >> 1)] |= 1L << ((block & 1) * 2 + (bit & 1));
+			long top = rule.nextWord (0, row [0], 0, 0, row [1], 0, 0, row [2], 0, 0);
+			long bottom = rule.nextWord (0, row [1], 0, 0, row [2], 0, 0, row [3], 0, 0);
+			int after = (int) ((top >>> 1) & 3) | (int) ((bottom >>> 1) & 3) << 2;
+			int before = (int) ((row [1] >>> 1) & 3) | (int) ((row [2] >>> 1) & 3) << 2;
+			table [square] = (byte) (after | before << 4);
+		}
+		return table;
+	}
+
+	// Getter methods for the size of colony
+	public int getRows ()
+	{
+		return rows;
+	}
+
+	public int getColumns ()
+	{
+		return columns;
+	}
+
+	// Setter method for population/eradication rate
+	public void setPopEradRate (double popEradRate)
+	{
+		this.popEradRate = popEradRate;
+	}
+
+	// Getter method for the rule the colony follows
+	public Rule getRule ()
+	{
+		return rule;
+	}
+
+	// Setter method for the rule the colony follows. The table only covers the eight cells around each cell, and
+	// cells that are alive or dead
+	public void setRule (Rule rule)
+	{
+		if (rule.getRadius () != 1 || rule.getStates () != 2)
+			throw new IllegalArgumentException ("A lookup table colony can't follow " + rule);
+		table = rule.equals (Rule.LIFE) ? LIFE_TABLE : buildTable (rule);
+		this.rule = rule;
+	}
+
+	// Returns the index in the grids of the block a cell is in, now
+	private int blockOf (int row, int column)
+	{
+		return (((row + phase) >> 1) + 1) * width + ((column + phase) >> 1) + 1;
+	}
+
+	// Returns the bit of its block a cell is, now
+	private int bitOf (int row, int column)
+	{
+		return 1 << (((row + phase) & 1) * 2 + ((column + phase) & 1));
+	}
+
+	// Returns the part of the hash for a cell. The hash of the colony is the parts of all its cells XORed together,
+	// so it doesn't depend on the phase
+	private long hashCell (int row, int column)
+	{
+		return Colony.hashWord (1, (long) row * columns + column);
+	}
+
+	// Checks if there is a cell at a location
+	public boolean isAlive (int row, int column)
+	{
+		return (blocks [blockOf (row, column)] & bitOf (row, column)) != 0;
+	}
+
+	// Returns the column of the first cell in a row at or after a column, or -1 if there isn't one
+	public int nextAlive (int row, int column)
+	{
+		for (int col = column; col < columns; col++)
+			if (blocks [blockOf (row, col)] == 0) // skip the rest of an empty block
+				col += 1 - ((col + phase) & 1);
+			else if (isAlive (row, col))
+				return col;
+		return -1;
+	}
+
+	// Puts a cell into (or removes a cell from) a location
+	public void setCell (int row, int column, boolean alive)
+	{
+		int block = blockOf (row, column), bit = bitOf (row, column);
+		if (((blocks [block] & bit) != 0) == alive)
+			return;
+		blocks [block] ^= bit;
+		population += alive ? 1 : -1;
+		hash ^= hashCell (row, column);
+	}
+
+	// Returns number of cells in the colony
+	public int getCellNum ()
+	{
+		return population;
+	}
+
+	// Returns number of cells born last generation
+	public int getBirths ()
+	{
+		return births;
+	}
+
+	// Returns number of cells that died last generation
+	public int getDeaths ()
+	{
+		return deaths;
+	}
+
+	// Returns a hash of the cells, kept up to date as they change
+	public long getHash ()
+	{
+		return hash;
+	}
+
+	// Checks if there are any cells left in the colony
+	public boolean anyCellsLeft ()
+	{
+		return population > 0;
+	}
+
+	// Add cells to an area of the colony
+	public void populate (int x1, int x2, int y1, int y2)
+	{
+		for (int i = Math.max (0, y1); i <= Math.min (rows - 1, y2); i++)
+			for (int j = Math.max (0, x1); j <= Math.min (columns - 1, x2); j++)
+				if (!isAlive (i, j)) // if the location does not have a cell
+					setCell (i, j, Math.random () * 100 < popEradRate);
+	}
+
+	// Delete cells in an area of the colony
+	public void eradicate (int x1, int x2, int y1, int y2)
+	{
+		for (int i = Math.max (0, y1); i <= Math.min (rows - 1, y2); i++)
+			for (int j = Math.max (0, x1); j <= Math.min (columns - 1, x2); j++)
+				if (isAlive (i, j)) // if the location contains a cell
+					setCell (i, j, Math.random () * 100 > popEradRate);
+	}
+
+	// Populates one square (for freestyle population)
+	public void populateOne (int y, int x)
+	{
+		setCell (x, y, true);
+	}
+
+	// Remove every cell
+	public void clear ()
+	{
+		Arrays.fill (blocks, (byte) 0);
+		population = 0;
+		hash = 0;
+	}
+
+	// Copy another colony's cells into this one with its top left corner at (row, column), clipping at the edges
+	public void place (Colony pattern, int row, int column)
+	{
+		for (int i = Math.max (0, -row); i < pattern.getRows () && i + row < rows; i++)
+			for (int j = Math.max (0, -column); j < pattern.getColumns () && j + column < columns; j++)
+				if (pattern.isAlive (i, j))
+					setCell (i + row, j + column, true);
+	}
+
+	// Produce next generation of cells in colony. Each new block is looked up from the square of four blocks it is
+	// in the middle of: the ones from it down and right if the blocks line up with the colony, or up and left if
+	// they don't. Cells that would be born past the edges are masked off, since everything outside is dead
+	public void advance ()
+	{
+		int after = 1 - phase; // phase of the new generation
+		int offset = phase == 0 ? -width - 1 : 0; // from a new block to the top left block of its square
+		int blockRows = ((rows - 1 + after) >> 1) + 1, blockColumns = ((columns - 1 + after) >> 1) + 1;
+		int[] masks = columnMasks [after];
+		births = 0;
+		deaths = 0;
+		long hashed = 0; // change to the hash
+		for (int b = 0; b < blockRows; b++)
+		{
+			int rowMask = (isInside (2 * b - after, rows) ? 3 : 0) | (isInside (2 * b - after + 1, rows) ? 12 : 0);
+			for (int c = 0, i = (b + 1) * width + 1; c < blockColumns; c++, i++)
+			{
+				int o = i + offset;
+				int square = (blocks [o] & 15) | (blocks [o + 1] & 15) << 4 | (blocks [o + width] & 15) << 8 | (blocks [o + width + 1] & 15) << 12;
+				int entry = table [square];
+				int cell = entry & rowMask & masks [c];
+				next [i] = (byte) cell;
+				int change = cell ^ ((entry >> 4) & 15);
+				if (change != 0)
+				{
+					births += Integer.bitCount (change & cell);
+					deaths += Integer.bitCount (change & ~cell);
+					for (int bit = 0; bit < 4; bit++)
+						if ((change & (1 << bit)) != 0)
+							hashed ^= hashCell (2 * b - after + (bit >> 1), 2 * c - after + (bit & 1));
+				}
+			}
+		}
+		population += births - deaths;
+		hash ^= hashed;
+
+		// The new generation becomes the cells; the old one's blocks are all inside the new one's area or margins, so
+		// they are overwritten next time (or stay dead past the edges)
+		byte[] temp = blocks;
+		blocks = next;
+		next = temp;
+		phase = after;
+	}
+}
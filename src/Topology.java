@@ -0,0 +1,53 @@
+// What happens at the edges of a bounded colony. Past a dead border there are only dead cells. A torus joins the
+// left edge to the right and the top to the bottom, a Klein bottle does the same but joins the top and bottom with
+// a twist (a cell leaving the top near the left comes back at the bottom near the right), and a cylinder only joins
+// the left and right edges
+public enum Topology
+{
+	DEAD ("dead border"), TORUS ("torus"), KLEIN_BOTTLE ("Klein bottle"), CYLINDER ("cylinder");
+
+	private final String name;
+
+	// Constructor
+	private Topology (String name)
+	{
+		this.name = name;
+	}
+
+	// Checks if cells past the left edge come from the right edge, and the other way round
+	public boolean wrapsColumns ()
+	{
+		return this != DEAD;
+	}
+
+	// Checks if cells past the top edge come from the bottom edge, and the other way round
+	public boolean wrapsRows ()
+	{
+		return this == TORUS || this == KLEIN_BOTTLE;
+	}
+
+	// Checks if rows are flipped left to right when they come round from the other edge
+	public boolean flipsRows ()
+	{
+		return this == KLEIN_BOTTLE;
+	}
+
+	// Returns the name of the topology
+	public String toString ()
+	{
+		return name;
+	}
+
+	// Returns the topology with a name (ignoring case, spaces and underscores); throws IllegalArgumentException if
+	// there isn't one
+	public static Topology parse (String text)
+	{
+		String wanted = text.replaceAll ("[ _-]", "");
+		for (Topology topology : values ())
+			if (topology.name.replace (" ", "").equalsIgnoreCase (wanted) || topology.name ().replace ("_", "").equalsIgnoreCase (wanted))
+				return topology;
+		if (wanted.equalsIgnoreCase ("klein")) // (short for Klein bottle)
+			return KLEIN_BOTTLE;
+		throw new IllegalArgumentException ("No topology called " + text);
+	}
+}
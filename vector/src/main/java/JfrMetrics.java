@@ -0,0 +1,108 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// Records what Metrics measures as Java Flight Recorder events, so a recording of a run (java -XX:StartFlightRecording,
+// or jcmd JFR.start on one that is already going) shows every generation and frame without attaching a profiler.
+// Each event begins when the generation or frame starts and is committed once it is done, so its start and duration
+// in the recording line up with other events on the same thread (the nanoseconds Metrics measured are kept as a field
+// too, for convenience). Needs Java 11 or later; on older ones this class can't load and Metrics carries on without it
+public class JfrMetrics implements MetricsListener
+{
+	private final ThreadLocal<StepEvent> steps = new ThreadLocal<StepEvent> (); // event begun on each thread (null if not wanted)
+	private final ThreadLocal<DrawEvent> draws = new ThreadLocal<DrawEvent> ();
+
+	// A generation stepped by the simulation
+	@Name ("conwaysgameoflife.Step")
+	@Label ("Generation Stepped")
+	@Category ("Game of Life")
+	@StackTrace (false)
+	static class StepEvent extends Event
+	{
+		@Label ("Generation")
+		long generation;
+
+		@Label ("Step Time")
+		@Timespan (Timespan.NANOSECONDS)
+		long stepTime;
+
+		@Label ("Cells")
+		@Description ("Cells worked out")
+		long cells;
+
+		@Label ("Allocated")
+		@Description ("Memory allocated by the simulation thread while stepping")
+		@DataAmount
+		long allocated;
+	}
+
+	// A frame of the colony drawn in the window
+	@Name ("conwaysgameoflife.Draw")
+	@Label ("Frame Drawn")
+	@Category ("Game of Life")
+	@StackTrace (false)
+	static class DrawEvent extends Event
+	{
+		@Label ("Draw Time")
+		@Timespan (Timespan.NANOSECONDS)
+		long drawTime;
+	}
+
+	// Begin the event for a generation (only if a recording wants it)
+	public void stepping ()
+	{
+		StepEvent event = new StepEvent ();
+		if (event.isEnabled ())
+		{
+			event.begin ();
+			steps.set (event);
+		}
+		else
+			steps.set (null);
+	}
+
+	// Record a generation stepped, committing the event begun for it
+	public void stepped (long generation, long nanos, long cells, long bytes)
+	{
+		StepEvent event = steps.get ();
+		if (event != null)
+		{
+			steps.set (null);
+			event.generation = generation;
+			event.stepTime = nanos;
+			event.cells = cells;
+			event.allocated = bytes;
+			event.commit ();
+		}
+	}
+
+	// Begin the event for a frame
+	public void drawing ()
+	{
+		DrawEvent event = new DrawEvent ();
+		if (event.isEnabled ())
+		{
+			event.begin ();
+			draws.set (event);
+		}
+		else
+			draws.set (null);
+	}
+
+	// Record a frame drawn
+	public void drawn (long nanos)
+	{
+		DrawEvent event = draws.get ();
+		if (event != null)
+		{
+			draws.set (null);
+			event.drawTime = nanos;
+			event.commit ();
+		}
+	}
+}
@@ -0,0 +1,66 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Steps runs of words with the Java Vector API: the same adders as Colony.nextWord, but on as many words at once
+// as the processor's vector registers hold (4 with AVX2, 8 with AVX-512). Needs Java 17 or later, started with
+// --add-modules jdk.incubator.vector; without that this class can't load and Colony steps one word at a time
+public class VectorRowStepper implements RowStepper
+{
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+	// Getter method for the number of words stepped at once
+	public int getLanes ()
+	{
+		return SPECIES.length ();
+	}
+
+	// Set dst [i] to the next generation of src [i] for every i from from up to to (see RowStepper)
+	public void step (long[] src, long[] dst, int from, int to, int words)
+	{
+		int i = from;
+		for (int end = to - SPECIES.length (); i <= end; i += SPECIES.length ())
+		{
+			// Neighbours to the left and right of each cell, borrowing from the words either side
+			LongVector a1 = LongVector.fromArray (SPECIES, src, i - words);
+			LongVector m1 = LongVector.fromArray (SPECIES, src, i);
+			LongVector b1 = LongVector.fromArray (SPECIES, src, i + words);
+			LongVector aL = left (src, i - words, a1), aR = right (src, i - words, a1);
+			LongVector mL = left (src, i, m1), mR = right (src, i, m1);
+			LongVector bL = left (src, i + words, b1), bR = right (src, i + words, b1);
+
+			// Add up each row of neighbours into a two bit number (ones and twos)
+			LongVector aOnes = aL.lanewise (VectorOperators.XOR, a1).lanewise (VectorOperators.XOR, aR);
+			LongVector aTwos = aL.and (a1).or (aR.and (aL.lanewise (VectorOperators.XOR, a1)));
+			LongVector mOnes = mL.lanewise (VectorOperators.XOR, mR), mTwos = mL.and (mR);
+			LongVector bOnes = bL.lanewise (VectorOperators.XOR, b1).lanewise (VectorOperators.XOR, bR);
+			LongVector bTwos = bL.and (b1).or (bR.and (bL.lanewise (VectorOperators.XOR, b1)));
+
+			// Add the three rows together (8 neighbours looks like 0, which is also death)
+			LongVector ones = aOnes.lanewise (VectorOperators.XOR, mOnes).lanewise (VectorOperators.XOR, bOnes);
+			LongVector carry = aOnes.and (mOnes).or (bOnes.and (aOnes.lanewise (VectorOperators.XOR, mOnes)));
+			LongVector twosSum = aTwos.lanewise (VectorOperators.XOR, mTwos).lanewise (VectorOperators.XOR, bTwos);
+			LongVector twosCarry = aTwos.and (mTwos).or (bTwos.and (aTwos.lanewise (VectorOperators.XOR, mTwos)));
+			LongVector twos = twosSum.lanewise (VectorOperators.XOR, carry);
+			LongVector fours = twosCarry.lanewise (VectorOperators.XOR, twosSum.and (carry));
+
+			// A cell lives with 3 neighbours, or with 2 neighbours if it was already alive
+			twos.lanewise (VectorOperators.AND_NOT, fours).and (ones.or (m1)).intoArray (dst, i);
+		}
+		for (; i < to; i++) // the words left over
+			dst [i] = Colony.nextWord (src [i - words - 1], src [i - words], src [i - words + 1], src [i - 1], src [i], src [i + 1],
+					src [i + words - 1], src [i + words], src [i + words + 1]);
+	}
+
+	// Returns the cell to the left of each cell in the words from i (bit j - 1, borrowing from the word before)
+	private static LongVector left (long[] src, int i, LongVector words)
+	{
+		return words.lanewise (VectorOperators.LSHL, 1).or (LongVector.fromArray (SPECIES, src, i - 1).lanewise (VectorOperators.LSHR, 63));
+	}
+
+	// Returns the cell to the right of each cell in the words from i (bit j + 1, borrowing from the word after)
+	private static LongVector right (long[] src, int i, LongVector words)
+	{
+		return words.lanewise (VectorOperators.LSHR, 1).or (LongVector.fromArray (SPECIES, src, i + 1).lanewise (VectorOperators.LSHL, 63));
+	}
+}